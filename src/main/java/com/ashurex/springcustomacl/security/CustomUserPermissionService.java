@@ -73,6 +73,7 @@ public class CustomUserPermissionService implements UserPermissionService, Initi
 
 	@Override
 	public void refreshPermissions(String username) {
+		userPermissionsCache.evict(username);
 		for (MembershipPartyType type : MembershipPartyType.values()) {
 			userPermissionsCache.evict(username + "_" + type.name());
 		}
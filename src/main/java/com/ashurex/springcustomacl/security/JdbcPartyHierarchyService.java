@@ -1,29 +1,278 @@
 package com.ashurex.springcustomacl.security;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentityRetrievalStrategy;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.acls.model.AclCache;
 import org.springframework.security.acls.model.ObjectIdentity;
 
 /**
  * JDBC implementation of {@link PartyHierarchyService}.
+ * <p>
+ * The whole party_hierarchy table is loaded into a {@link PartyHierarchyIndex} when the service starts, and every
+ * lookup is answered from memory, "is descendant of" checks through the nested-set intervals of the index.
+ * {@link #refresh()} reloads the table into a new index and swaps it in atomically, readers keep using the previous
+ * index until the new one is complete.
+ * <p>
+ * Edits are picked up incrementally by {@link #refreshChanges()}, which polls the rows whose version column went up
+ * since the last load, applies only those parent/child edges to a copy of the index and evicts the ACLs of the moved
+ * subtrees from the {@link AclCache}. Rows are soft deleted so deletions are seen by the poll as well. Every
+ * applied change bumps the {@link #getGeneration() generation}, so ACL lookups that ran against the previous index
+ * don't put stale ACLs back in the cache.
  *
  * @author Mustafa Ashurex
  */
-public class JdbcPartyHierarchyService implements PartyHierarchyService, InitializingBean {
+@Slf4j
+public class JdbcPartyHierarchyService implements PartyHierarchyService, InitializingBean, DisposableBean {
+	/**
+	 * Every parent/child edge of the party hierarchy, parent columns are {@code null} for root parties.
+	 */
+	public static final String DEFAULT_HIERARCHY_QUERY =
+			"SELECT party_type, party_code, parent_party_type, parent_code, version FROM party_hierarchy " +
+			"WHERE deleted = 0";
+
+	/**
+	 * Every edge changed, added or deleted after the given version, oldest change first.
+	 */
+	public static final String DEFAULT_CHANGES_QUERY =
+			"SELECT party_type, party_code, parent_party_type, parent_code, deleted, version FROM party_hierarchy " +
+			"WHERE version > ? ORDER BY version";
+
 	private final PartyObjectIdentityRetrievalStrategy partyIdRetriever;
+	private final JdbcTemplate jdbcTemplate;
+	private final JdbcTemplate streamingJdbcTemplate;
+	private final Object refreshLock = new Object();
+	private String hierarchyQuery = DEFAULT_HIERARCHY_QUERY;
+	private String changesQuery = DEFAULT_CHANGES_QUERY;
+	private AclCache aclCache;
+	private long refreshIntervalMillis;
+	private ScheduledExecutorService refreshExecutor;
+	private final AtomicLong generation = new AtomicLong();
+	private final NavigableSet<Long> polledVersions = new TreeSet<>();
+	private long versionOverlap = 1000;
+	private volatile PartyHierarchyIndex index;
+	private long version;
 
 	public JdbcPartyHierarchyService(JdbcTemplate jdbcTemplate, PartyObjectIdentityRetrievalStrategy pids) {
 		this.partyIdRetriever = pids;
-		// ... JdbcTemplate used for queries removed from this example ...
+		this.jdbcTemplate = jdbcTemplate;
+		// The hierarchy is read through a cursor, rows are fetched from the database in chunks of the fetch size.
+		this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+		this.streamingJdbcTemplate.setFetchSize(500);
+		// ... other JdbcTemplate queries removed from this example ...
 	}
 
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		// ... initialization code ...
+		refresh();
+
+		if (refreshIntervalMillis > 0) {
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("party-hierarchy-refresh-");
+			threadFactory.setDaemon(true);
+			refreshExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+			refreshExecutor.scheduleWithFixedDelay(() -> {
+				try {
+					refreshChanges();
+				}
+				catch (Exception ex) {
+					log.warn("Unable to refresh the party hierarchy", ex);
+				}
+			}, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (null != refreshExecutor) {
+			refreshExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param fetchSize Number of rows fetched per round trip when loading the hierarchy. Note that MySQL
+	 *                  Connector/J only honours this with {@code useCursorFetch=true} on the JDBC URL, or streams row
+	 *                  by row when set to {@link Integer#MIN_VALUE}.
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.streamingJdbcTemplate.setFetchSize(fetchSize);
+	}
+
+	public void setHierarchyQuery(String hierarchyQuery) {
+		this.hierarchyQuery = hierarchyQuery;
+	}
+
+	public void setChangesQuery(String changesQuery) {
+		this.changesQuery = changesQuery;
+	}
+
+	/**
+	 * @param aclCache Cache to evict the ACLs of moved parties and their descendants from, as their inherited entries
+	 *                 and parent ACLs change with the hierarchy.
+	 */
+	public void setAclCache(AclCache aclCache) {
+		this.aclCache = aclCache;
+	}
+
+	/**
+	 * @param versionOverlap How far below the highest version seen each poll starts, in units of the version column.
+	 *                       Rows written by transactions that commit out of version order are picked up as long as
+	 *                       they commit within this window; rows already seen are skipped by their version.
+	 */
+	public void setVersionOverlap(long versionOverlap) {
+		this.versionOverlap = versionOverlap;
+	}
+
+	/**
+	 * @param refreshIntervalMillis Delay between two polls for hierarchy changes, polling is disabled when zero.
+	 *                              Must be set before the service is initialized.
+	 */
+	public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+
+	/**
+	 * Reload the party hierarchy from the database and swap it in once it is fully loaded.
+	 */
+	public void refresh() {
+		synchronized (refreshLock) {
+			long start = System.currentTimeMillis();
+			PartyHierarchyIndex.Builder builder = PartyHierarchyIndex.builder();
+			long[] maxVersion = {0L};
+			// Versions of the loaded rows within the overlap window, so the next poll doesn't apply them again
+			NavigableSet<Long> loadedVersions = new TreeSet<>();
+			streamingJdbcTemplate.query(hierarchyQuery, rs -> {
+				HierarchyEdge edge = mapEdge(rs);
+				builder.put(edge.party, edge.parent);
+				maxVersion[0] = Math.max(maxVersion[0], edge.version);
+				if (edge.version > maxVersion[0] - versionOverlap) {
+					loadedVersions.add(edge.version);
+					loadedVersions.headSet(maxVersion[0] - versionOverlap, true).clear();
+				}
+			});
+			this.index = builder.build();
+			this.version = maxVersion[0];
+			this.polledVersions.clear();
+			this.polledVersions.addAll(loadedVersions);
+			this.generation.incrementAndGet();
+			log.info("Loaded {} parties into the party hierarchy in {}ms",
+					 index.size(), System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Apply the hierarchy edges changed since the last load or refresh to a copy of the index and swap it in. The
+	 * ACLs of every party whose ancestors changed are evicted from the ACL cache once the new index is visible.
+	 *
+	 * @return The number of changed edges applied.
+	 */
+	public int refreshChanges() {
+		synchronized (refreshLock) {
+			PartyHierarchyIndex current = index;
+			if (null == current) {
+				refresh();
+				return 0;
+			}
+
+			// Re-poll a window below the high-water mark, a lower version can become visible after a higher one
+			List<HierarchyEdge> changes = new ArrayList<>();
+			jdbcTemplate.query(changesQuery, new Object[]{version - versionOverlap}, rs -> {
+				HierarchyEdge edge = mapEdge(rs);
+				edge.deleted = rs.getBoolean("deleted");
+				if (!polledVersions.contains(edge.version)) {
+					changes.add(edge);
+				}
+			});
+			if (changes.isEmpty()) {
+				return 0;
+			}
+
+			// Only the latest row of a party counts, e.g. a move to another parent and back again is no change
+			Map<PartyObjectIdentity, HierarchyEdge> latest = new LinkedHashMap<>();
+			long maxVersion = version;
+			for (HierarchyEdge edge : changes) {
+				maxVersion = Math.max(maxVersion, edge.version);
+				latest.put(edge.party, edge);
+			}
+
+			PartyHierarchyIndex.Builder builder = current.toBuilder();
+			Set<PartyObjectIdentity> moved = new LinkedHashSet<>();
+			List<PartyObjectIdentity> deleted = new ArrayList<>();
+			for (HierarchyEdge edge : latest.values()) {
+				if (edge.deleted) {
+					if (current.contains(edge.party)) {
+						deleted.add(edge.party);
+						moved.add(edge.party);
+					}
+				}
+				else if (!current.contains(edge.party) || !Objects.equals(current.getParent(edge.party), edge.parent)) {
+					builder.put(edge.party, edge.parent);
+					moved.add(edge.party);
+				}
+			}
+
+			// Deleted edges go last, so whether a party is still some child's parent is decided on the live edges
+			// only, the same as a full reload that never reads the deleted rows
+			deleted.forEach(pid -> builder.put(pid, null));
+			deleted.forEach(builder::remove);
+
+			changes.forEach(edge -> polledVersions.add(edge.version));
+			polledVersions.headSet(maxVersion - versionOverlap, true).clear();
+			this.version = maxVersion;
+			if (moved.isEmpty()) {
+				return changes.size();
+			}
+
+			// Lookups that started on the previous index see the new generation and drop what they cached
+			this.index = builder.build();
+			this.generation.incrementAndGet();
+
+			if (null != aclCache) {
+				Set<PartyObjectIdentity> evicted = new HashSet<>();
+				for (PartyObjectIdentity pid : moved) {
+					if (evicted.add(pid)) {
+						aclCache.evictFromCache(pid);
+						current.forEachDescendant(pid, d -> {
+							if (evicted.add(d)) {
+								aclCache.evictFromCache(d);
+							}
+						});
+					}
+				}
+				log.debug("Applied {} party hierarchy changes, evicted {} ACLs", changes.size(), evicted.size());
+			}
+
+			return changes.size();
+		}
+	}
+
+	@Override
+	public long getGeneration() {
+		return generation.get();
 	}
 
 	@Override
@@ -41,14 +290,100 @@ public class JdbcPartyHierarchyService implements PartyHierarchyService, Initial
 
 	@Override
 	public List<PartyObjectIdentity> getAncestors(ObjectIdentity oid) {
-		// ... implementation of retrieving ancestors ...
-		return Collections.emptyList();
-	}
+		PartyObjectIdentity pid = getPartyIdentity(oid);
+		if (null == pid) {
+			return Collections.emptyList();
+		}
 
+		return getIndex().getAncestors(pid);
+	}
 
 	@Override
 	public List<PartyObjectIdentity> getPredecessors(ObjectIdentity oid) {
-		// ... implementation of retrieving predecessors ...
-		return Collections.emptyList();
+		List<PartyObjectIdentity> predecessors = new ArrayList<>();
+		forEachPredecessor(oid, predecessors::add);
+		return predecessors;
+	}
+
+	@Override
+	public void forEachPredecessor(ObjectIdentity oid, Consumer<? super PartyObjectIdentity> action) {
+		PartyObjectIdentity pid = getPartyIdentity(oid);
+		if (null == pid) {
+			return;
+		}
+
+		getIndex().forEachDescendant(pid, action);
+	}
+
+	@Override
+	public void forEachPredecessor(ObjectIdentity oid, int limit, Consumer<? super PartyObjectIdentity> action) {
+		PartyObjectIdentity pid = getPartyIdentity(oid);
+		if (null == pid) {
+			return;
+		}
+
+		getIndex().forEachDescendant(pid, limit, action);
+	}
+
+	/**
+	 * Answered from the nested-set interval of {@literal ancestor} with two int comparisons.
+	 */
+	@Override
+	public boolean isDescendant(ObjectIdentity ancestor, ObjectIdentity descendant) {
+		PartyObjectIdentity ancestorPid = getPartyIdentity(ancestor);
+		PartyObjectIdentity descendantPid = getPartyIdentity(descendant);
+		if (null == ancestorPid || null == descendantPid) {
+			return false;
+		}
+
+		return getIndex().isDescendant(ancestorPid, descendantPid);
+	}
+
+	@Override
+	public <T extends ObjectIdentity> List<T> filterDescendants(ObjectIdentity ancestor, Collection<T> candidates) {
+		PartyObjectIdentity pid = getPartyIdentity(ancestor);
+		if (null == pid || null == candidates || candidates.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// A single snapshot for the whole set, so a concurrent refresh can't mix numberings
+		return getIndex().filterDescendants(pid, candidates, this::getPartyIdentity);
+	}
+
+	private static HierarchyEdge mapEdge(ResultSet rs) throws SQLException {
+		HierarchyEdge edge = new HierarchyEdge();
+		edge.party = new PartyObjectIdentity(MembershipPartyType.valueOf(rs.getString("party_type")),
+											 rs.getString("party_code"));
+		String parentType = rs.getString("parent_party_type");
+		String parentCode = rs.getString("parent_code");
+		if (null != parentType && null != parentCode) {
+			edge.parent = new PartyObjectIdentity(MembershipPartyType.valueOf(parentType), parentCode);
+		}
+		edge.version = rs.getLong("version");
+		return edge;
+	}
+
+	private PartyHierarchyIndex getIndex() {
+		PartyHierarchyIndex current = index;
+		if (null == current) {
+			// Only reached when used before afterPropertiesSet, callers wait for the first load
+			synchronized (refreshLock) {
+				if (null == index) {
+					refresh();
+				}
+				current = index;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * A party_hierarchy row.
+	 */
+	private static final class HierarchyEdge {
+		private PartyObjectIdentity party;
+		private PartyObjectIdentity parent;
+		private boolean deleted;
+		private long version;
 	}
 }
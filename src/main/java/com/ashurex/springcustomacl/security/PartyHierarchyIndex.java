@@ -0,0 +1,284 @@
+package com.ashurex.springcustomacl.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentity;
+
+/**
+ * Immutable, in-memory snapshot of the party hierarchy (CLIENT &rarr; FIRM &rarr; DESK &rarr; STRATEGY &rarr;
+ * ACCOUNT), held in flat arrays without database access.
+ * <p>
+ * Parties are numbered in pre-order, so the subtree of every party is the contiguous range from its own number to
+ * the number of its last descendant (a nested-set interval). Ancestor lookups walk the parent array in O(depth),
+ * descendant lookups read the range in O(subtree), and "is descendant of" is answered by two int comparisons.
+ * <p>
+ * A party has at most one parent; instances are never modified, a refresh builds a new index and swaps it in.
+ *
+ * @author Mustafa Ashurex
+ * @see JdbcPartyHierarchyService
+ */
+final class PartyHierarchyIndex {
+	private static final int NO_PARENT = -1;
+
+	private final Map<PartyObjectIdentity, Integer> ordinals;
+	private final PartyObjectIdentity[] parties;
+	private final int[] parents;
+	private final int[] subtreeEnds;
+
+	private PartyHierarchyIndex(Map<PartyObjectIdentity, Integer> ordinals,
+								PartyObjectIdentity[] parties,
+								int[] parents,
+								int[] subtreeEnds) {
+		this.ordinals = ordinals;
+		this.parties = parties;
+		this.parents = parents;
+		this.subtreeEnds = subtreeEnds;
+	}
+
+	static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return The number of parties in the hierarchy.
+	 */
+	int size() {
+		return parties.length;
+	}
+
+	boolean contains(PartyObjectIdentity pid) {
+		return ordinals.containsKey(pid);
+	}
+
+	/**
+	 * @return The parent of the given party, or {@code null} if it is a root or isn't in the hierarchy.
+	 */
+	PartyObjectIdentity getParent(PartyObjectIdentity pid) {
+		Integer ordinal = ordinals.get(pid);
+		if (null == ordinal || NO_PARENT == parents[ordinal]) {
+			return null;
+		}
+
+		return parties[parents[ordinal]];
+	}
+
+	/**
+	 * @return The ancestors of the given party, nearest first.
+	 */
+	List<PartyObjectIdentity> getAncestors(PartyObjectIdentity pid) {
+		Integer ordinal = ordinals.get(pid);
+		if (null == ordinal || NO_PARENT == parents[ordinal]) {
+			return Collections.emptyList();
+		}
+
+		List<PartyObjectIdentity> ancestors = new ArrayList<>(MembershipPartyType.values().length);
+		// Parents are numbered before their children, a parent numbered after its child closes a cycle
+		for (int c = ordinal, p = parents[c]; NO_PARENT != p && p < c; c = p, p = parents[p]) {
+			ancestors.add(parties[p]);
+		}
+		return ancestors;
+	}
+
+	/**
+	 * Call the given action once for every descendant of the given party, parents before their children.
+	 */
+	void forEachDescendant(PartyObjectIdentity pid, Consumer<? super PartyObjectIdentity> action) {
+		forEachDescendant(pid, Integer.MAX_VALUE, action);
+	}
+
+	/**
+	 * Call the given action for the first {@literal limit} descendants of the given party, in the same order as
+	 * {@link #forEachDescendant(PartyObjectIdentity, Consumer)}.
+	 */
+	void forEachDescendant(PartyObjectIdentity pid, int limit, Consumer<? super PartyObjectIdentity> action) {
+		Integer ordinal = ordinals.get(pid);
+		if (null == ordinal || limit <= 0) {
+			return;
+		}
+
+		int end = ordinal + Math.min(limit, subtreeEnds[ordinal] - ordinal);
+		for (int i = ordinal + 1; i <= end; i++) {
+			action.accept(parties[i]);
+		}
+	}
+
+	/**
+	 * @return {@code true} if {@literal descendant} is in the subtree of {@literal ancestor}, excluding the ancestor
+	 * itself.
+	 */
+	boolean isDescendant(PartyObjectIdentity ancestor, PartyObjectIdentity descendant) {
+		Integer a = ordinals.get(ancestor);
+		Integer d = null == a ? null : ordinals.get(descendant);
+		return null != d && isDescendant(a, d);
+	}
+
+	/**
+	 * @return The given candidates that are in the subtree of {@literal ancestor}, in their original order.
+	 */
+	<T extends ObjectIdentity> List<T> filterDescendants(PartyObjectIdentity ancestor,
+														 Collection<T> candidates,
+														 Function<? super T, PartyObjectIdentity> pidResolver) {
+		Integer a = ordinals.get(ancestor);
+		if (null == a || a == subtreeEnds[a]) {
+			return Collections.emptyList();
+		}
+
+		List<T> descendants = new ArrayList<>();
+		for (T candidate : candidates) {
+			Integer d = null == candidate ? null : ordinals.get(pidResolver.apply(candidate));
+			if (null != d && isDescendant(a, d)) {
+				descendants.add(candidate);
+			}
+		}
+		return descendants;
+	}
+
+	private boolean isDescendant(int ancestor, int descendant) {
+		return ancestor < descendant && descendant <= subtreeEnds[ancestor];
+	}
+
+	/**
+	 * @return A builder holding every edge of this index, for deriving a modified copy.
+	 */
+	Builder toBuilder() {
+		Builder builder = new Builder();
+		for (int i = 0; i < parties.length; i++) {
+			builder.put(parties[i], NO_PARENT == parents[i] ? null : parties[parents[i]]);
+		}
+		return builder;
+	}
+
+	/**
+	 * Collects child &rarr; parent edges and packs them into a {@link PartyHierarchyIndex}.
+	 */
+	static final class Builder {
+		private final Map<PartyObjectIdentity, PartyObjectIdentity> parentsByParty = new LinkedHashMap<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Set the parent of a party, replacing any previous parent.
+		 *
+		 * @param party  The child party.
+		 * @param parent The parent party, or {@code null} if the party is a root.
+		 */
+		Builder put(PartyObjectIdentity party, PartyObjectIdentity parent) {
+			parentsByParty.put(party, parent);
+			if (null != parent) {
+				parentsByParty.putIfAbsent(parent, null);
+			}
+			return this;
+		}
+
+		/**
+		 * Delete the edge from a party to its parent, like a soft deleted party_hierarchy row. The party stays in the
+		 * hierarchy as a root, along with its subtree, while other parties still name it as their parent.
+		 */
+		Builder remove(PartyObjectIdentity party) {
+			if (parentsByParty.containsValue(party)) {
+				parentsByParty.put(party, null);
+			}
+			else {
+				parentsByParty.remove(party);
+			}
+			return this;
+		}
+
+		PartyHierarchyIndex build() {
+			int size = parentsByParty.size();
+			Map<PartyObjectIdentity, Integer> positions = new HashMap<>(size * 4 / 3 + 1);
+			PartyObjectIdentity[] unordered = new PartyObjectIdentity[size];
+			for (PartyObjectIdentity party : parentsByParty.keySet()) {
+				unordered[positions.size()] = party;
+				positions.put(party, positions.size());
+			}
+
+			// Pack the children of every party one after the other, childOffsets[p] is where those of p start
+			int[] unorderedParents = new int[size];
+			int[] childOffsets = new int[size + 1];
+			for (int i = 0; i < size; i++) {
+				PartyObjectIdentity parent = parentsByParty.get(unordered[i]);
+				unorderedParents[i] = null == parent ? NO_PARENT : positions.get(parent);
+				if (NO_PARENT != unorderedParents[i]) {
+					childOffsets[unorderedParents[i] + 1]++;
+				}
+			}
+
+			for (int i = 0; i < size; i++) {
+				childOffsets[i + 1] += childOffsets[i];
+			}
+
+			int[] children = new int[childOffsets[size]];
+			int[] next = Arrays.copyOf(childOffsets, size);
+			for (int i = 0; i < size; i++) {
+				if (NO_PARENT != unorderedParents[i]) {
+					children[next[unorderedParents[i]]++] = i;
+				}
+			}
+
+			// Number the parties in pre-order, starting from the roots. Parties only reachable through a cycle in
+			// the source data are numbered last, starting from wherever the cycle is first found.
+			int[] ranks = new int[size];
+			Arrays.fill(ranks, -1);
+			int[] order = new int[size];
+			int[] unorderedEnds = new int[size];
+			int[] stack = new int[size];
+			int[] cursors = new int[size];
+			int rank = 0;
+			for (int pass = 0; pass < 2; pass++) {
+				for (int root = 0; root < size; root++) {
+					if (-1 != ranks[root] || (0 == pass && NO_PARENT != unorderedParents[root])) {
+						continue;
+					}
+
+					int top = 0;
+					ranks[root] = rank;
+					order[rank++] = root;
+					stack[top] = root;
+					cursors[top++] = childOffsets[root];
+					while (top > 0) {
+						int current = stack[top - 1];
+						if (cursors[top - 1] < childOffsets[current + 1]) {
+							int child = children[cursors[top - 1]++];
+							if (-1 == ranks[child]) {
+								ranks[child] = rank;
+								order[rank++] = child;
+								stack[top] = child;
+								cursors[top++] = childOffsets[child];
+							}
+						}
+						else {
+							unorderedEnds[current] = rank - 1;
+							top--;
+						}
+					}
+				}
+			}
+
+			Map<PartyObjectIdentity, Integer> ordinals = new HashMap<>(size * 4 / 3 + 1);
+			PartyObjectIdentity[] parties = new PartyObjectIdentity[size];
+			int[] parents = new int[size];
+			int[] subtreeEnds = new int[size];
+			for (int r = 0; r < size; r++) {
+				int i = order[r];
+				parties[r] = unordered[i];
+				parents[r] = NO_PARENT == unorderedParents[i] ? NO_PARENT : ranks[unorderedParents[i]];
+				subtreeEnds[r] = unorderedEnds[i];
+				ordinals.put(parties[r], r);
+			}
+
+			return new PartyHierarchyIndex(ordinals, parties, parents, subtreeEnds);
+		}
+	}
+}
@@ -1,6 +1,9 @@
 package com.ashurex.springcustomacl.security;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
 import org.springframework.security.acls.model.ObjectIdentity;
 
@@ -39,4 +42,62 @@ public interface PartyHierarchyService {
 	 * {@link ObjectIdentity}.
 	 */
 	List<PartyObjectIdentity> getPredecessors(ObjectIdentity id);
+
+	/**
+	 * Stream all distinct child {@code PartyObjectIdentity} values for the given {@code ObjectIdentity} to the given
+	 * action, one at a time, so large subtrees can be walked without holding them in memory.
+	 *
+	 * @param id     The OID to find child PIDs for.
+	 * @param action Called once for every distinct child {@link PartyObjectIdentity}.
+	 */
+	default void forEachPredecessor(ObjectIdentity id, Consumer<? super PartyObjectIdentity> action) {
+		getPredecessors(id).forEach(action);
+	}
+
+	/**
+	 * Bounded variant of {@link #forEachPredecessor(ObjectIdentity, Consumer)}, the walk stops once the given number
+	 * of child {@code PartyObjectIdentity} values was passed to the action.
+	 *
+	 * @param id     The OID to find child PIDs for.
+	 * @param limit  Maximum number of child PIDs passed to the action.
+	 * @param action Called once for every distinct child {@link PartyObjectIdentity}, up to the limit.
+	 */
+	default void forEachPredecessor(ObjectIdentity id, int limit, Consumer<? super PartyObjectIdentity> action) {
+		getPredecessors(id).stream().limit(Math.max(0, limit)).forEach(action);
+	}
+
+	/**
+	 * @return A counter that goes up every time the hierarchy changes, callers caching data derived from the
+	 * hierarchy compare it before and after loading to detect a concurrent change.
+	 */
+	default long getGeneration() {
+		return 0L;
+	}
+
+	/**
+	 * Check whether a party sits anywhere below another party in the hierarchy.
+	 *
+	 * @param ancestor   The OID of the candidate ancestor.
+	 * @param descendant The OID of the candidate descendant.
+	 *
+	 * @return {@code true} if {@literal descendant} is a (possibly indirect) child of {@literal ancestor}, a party is
+	 * not its own descendant.
+	 */
+	default boolean isDescendant(ObjectIdentity ancestor, ObjectIdentity descendant) {
+		PartyObjectIdentity pid = getPartyIdentity(ancestor);
+		return null != pid && null != descendant && getAncestors(descendant).contains(pid);
+	}
+
+	/**
+	 * Range form of {@link #isDescendant(ObjectIdentity, ObjectIdentity)}, for filtering a large set of objects down
+	 * to those in the subtree of a single party.
+	 *
+	 * @param ancestor   The OID of the party whose subtree is kept.
+	 * @param candidates The OIDs to filter.
+	 *
+	 * @return The {@literal candidates} that are descendants of {@literal ancestor}, in their original order.
+	 */
+	default <T extends ObjectIdentity> List<T> filterDescendants(ObjectIdentity ancestor, Collection<T> candidates) {
+		return candidates.stream().filter(c -> isDescendant(ancestor, c)).collect(Collectors.toList());
+	}
 }
@@ -1,17 +1,26 @@
 package com.ashurex.springcustomacl.security;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 import javax.sql.DataSource;
-import com.ashurex.springcustomacl.security.acls.domain.CustomPermission;
 import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
 import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
+import com.ashurex.springcustomacl.security.acls.model.InheritedPartyMembershipResultSetExtractor;
 import com.ashurex.springcustomacl.security.acls.model.PartyMembershipAcl;
+import com.ashurex.springcustomacl.security.acls.model.PartyMembershipResultSetExtractor;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentityRetrievalStrategy;
 import lombok.Getter;
@@ -49,10 +58,81 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 	private final PartyObjectIdentityRetrievalStrategy partyIdRetriever;
 	private final PartyHierarchyService partyHierarchyService;
 
+	/**
+	 * Default query for party membership entries, joined to the user table so rows can be mapped to
+	 * {@link PrincipalSid}s. The WHERE clause is appended per query.
+	 */
+	public static final String DEFAULT_SELECT_CLAUSE = "SELECT pm.id, pm.party_type, pm.user_id, u.username, " +
+													   "pm.party_id, pm.party_code, pm.parent_identity, " +
+													   "pm.parent_party_type, pm.inheriting, pm.permission_mask " +
+													   "FROM party_membership pm " +
+													   "INNER JOIN user u ON u.id = pm.user_id";
+
+	/**
+	 * Token in {@link #DEFAULT_INHERITED_SELECT_CLAUSE} replaced with the filter for the requested parties.
+	 */
+	public static final String PARTY_FILTER_TOKEN = "{partyFilter}";
+
+	/**
+	 * Default recursive query resolving every ancestor of the requested parties along with the ancestors' inheriting
+	 * membership entries. Each row carries the requested (descendant) party it was resolved for. Soft deleted
+	 * party_hierarchy edges are not followed.
+	 */
+	public static final String DEFAULT_INHERITED_SELECT_CLAUSE =
+			"WITH RECURSIVE ancestry (descendant_type, descendant_code, party_type, party_code) AS (" +
+			"SELECT ph.party_type, ph.party_code, ph.parent_party_type, ph.parent_code " +
+			"FROM party_hierarchy ph " +
+			"WHERE ph.parent_code IS NOT NULL AND ph.deleted = 0 AND (" + PARTY_FILTER_TOKEN + ") " +
+			"UNION ALL " +
+			"SELECT a.descendant_type, a.descendant_code, ph.parent_party_type, ph.parent_code " +
+			"FROM ancestry a " +
+			"INNER JOIN party_hierarchy ph ON ph.party_type = a.party_type AND ph.party_code = a.party_code " +
+			"WHERE ph.parent_code IS NOT NULL AND ph.deleted = 0) " +
+			"SELECT a.descendant_type, a.descendant_code, pm.id, pm.party_type, pm.user_id, u.username, " +
+			"pm.party_id, pm.party_code, pm.parent_identity, pm.parent_party_type, pm.inheriting, " +
+			"pm.permission_mask " +
+			"FROM ancestry a " +
+			"INNER JOIN party_membership pm ON pm.party_type = a.party_type AND pm.party_code = a.party_code " +
+			"INNER JOIN user u ON u.id = pm.user_id " +
+			"WHERE pm.inheriting = 1";
+
 	@Setter
 	@Getter
 	private int batchSize = 100;
 
+	/**
+	 * Executor batches of a single {@link #readAclsById(List, List)} call are loaded on concurrently, its pool size
+	 * bounds the number of concurrent batches. If {@literal null}, batches are loaded sequentially on the calling
+	 * thread, as are batches the executor rejects.
+	 */
+	@Setter
+	@Getter
+	private Executor batchExecutor;
+
+	/**
+	 * If {@literal true}, inherited ACEs for a whole batch are loaded with one recursive query (see
+	 * {@link #DEFAULT_INHERITED_SELECT_CLAUSE}) instead of per-ACL {@link PartyHierarchyService#getAncestors} and
+	 * membership lookups. Requires a database with recursive CTE support (e.g. MySQL 8+).
+	 */
+	@Setter
+	@Getter
+	private boolean recursiveInheritanceQuery = false;
+
+	@Setter
+	@Getter
+	private String inheritedSelectClause = DEFAULT_INHERITED_SELECT_CLAUSE;
+
+	/**
+	 * Maximum number of bind parameters in any single IN-list, larger lists are split across multiple queries.
+	 */
+	@Setter
+	@Getter
+	private int maxInClauseSize = 1000;
+
+	@Setter
+	@Getter
+	private String selectClause = DEFAULT_SELECT_CLAUSE;
+
 	public PartyMembershipLookupStrategy(DataSource dataSource,
 										 PartyObjectIdentityRetrievalStrategy partyIdRetriever,
 										 PartyHierarchyService partyHierarchyService,
@@ -69,60 +149,89 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 		this.partyHierarchyService = partyHierarchyService;
 	}
 
+	/**
+	 * @param fetchSize JDBC fetch size hint used when streaming membership rows.
+	 *
+	 * @see JdbcTemplate#setFetchSize(int)
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.jdbcTemplate.setFetchSize(fetchSize);
+	}
+
 	@Override
 	public Map<ObjectIdentity, Acl> readAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+		final long generation = partyHierarchyService.getGeneration();
 		final Map<ObjectIdentity, Acl> result = new HashMap<>();
-		final Set<ObjectIdentity> currentBatchToLoad = new HashSet<>();
-
-		for (int i = 0; i < objects.size(); i++) {
-			ObjectIdentity oid = objects.get(i);
-			if (null == oid) {
+		final List<Set<ObjectIdentity>> batchesToLoad = new ArrayList<>();
+		final Set<ObjectIdentity> queued = new HashSet<>();
+		Set<ObjectIdentity> currentBatchToLoad = new HashSet<>();
+		// Cached ACLs that were loaded for a different set of SIDs, these get merged with the newly loaded SIDs.
+		final Map<ObjectIdentity, PartyMembershipAcl> partiallyLoaded = new HashMap<>();
+
+		for (ObjectIdentity oid : objects) {
+			if (null == oid || result.containsKey(oid) || queued.contains(oid)) {
 				continue;
 			}
 
 			boolean aclFound = false;
 
-			if (result.containsKey(oid)) {
-				aclFound = true;
-			}
-
-			if (!aclFound) {
-				try {
-					Acl acl = aclCache.getFromCache(oid);
-					if (acl != null) {
-						if (acl.isSidLoaded(sids)) {
-							result.put(acl.getObjectIdentity(), acl);
-							aclFound = true;
-						}
-						else if (acl instanceof PartyMembershipAcl) {
-							// TODO: SIDs aren't being loaded
-							loadInheritedAceEntries((PartyMembershipAcl) acl, sids);
-						}
+			try {
+				Acl acl = aclCache.getFromCache(oid);
+				if (acl != null) {
+					if (acl.isSidLoaded(sids)) {
+						result.put(acl.getObjectIdentity(), acl);
+						aclFound = true;
+					}
+					else if (acl instanceof PartyMembershipAcl) {
+						// Only the missing SIDs need loading, the cached entries are kept for everyone else.
+						partiallyLoaded.put(acl.getObjectIdentity(), (PartyMembershipAcl) acl);
 					}
 				}
-				catch (IllegalArgumentException | IllegalStateException ex) {
-					log.warn("Error finding ObjectIdentity: {}", ex.getMessage(), ex.getCause());
-				}
+			}
+			catch (IllegalArgumentException | IllegalStateException ex) {
+				log.warn("Error finding ObjectIdentity: {}", ex.getMessage(), ex.getCause());
 			}
 
 			if (!aclFound) {
+				queued.add(oid);
 				currentBatchToLoad.add(oid);
+				if (currentBatchToLoad.size() == this.batchSize) {
+					batchesToLoad.add(currentBatchToLoad);
+					currentBatchToLoad = new HashSet<>();
+				}
 			}
+		}
 
-			if ((currentBatchToLoad.size() == this.batchSize) || ((i + 1) == objects.size())) {
-				if (currentBatchToLoad.size() > 0) {
-					Map<ObjectIdentity, PartyMembershipAcl> loadedBatch = lookupObjectIdentities(currentBatchToLoad,
-																								 sids);
+		if (!currentBatchToLoad.isEmpty()) {
+			batchesToLoad.add(currentBatchToLoad);
+		}
 
-					// Add loaded batch (all elements 100% initialized) to results
-					result.putAll(loadedBatch);
+		// Results and cache puts are merged on the calling thread, even when batches were loaded concurrently.
+		final List<Map<ObjectIdentity, PartyMembershipAcl>> loadedBatches = loadBatches(batchesToLoad, sids);
+		for (Map<ObjectIdentity, PartyMembershipAcl> loadedBatch : loadedBatches) {
+			for (PartyMembershipAcl loadedAcl : loadedBatch.values()) {
+				PartyMembershipAcl cached = partiallyLoaded.remove(loadedAcl.getObjectIdentity());
+				if (null != cached) {
+					loadedAcl.mergeEntries(cached);
+				}
+			}
 
-					// Add the loaded batch to the cache
-					for (PartyMembershipAcl loadedAcl : loadedBatch.values()) {
-						aclCache.putInCache(loadedAcl);
-					}
+			// Add loaded batch (all elements 100% initialized) to results
+			result.putAll(loadedBatch);
 
-					currentBatchToLoad.clear();
+			// Add the loaded batch to the cache
+			for (PartyMembershipAcl loadedAcl : loadedBatch.values()) {
+				aclCache.putInCache(loadedAcl);
+			}
+		}
+
+		// Checked after the puts: a hierarchy change evicts after bumping the generation, so either its eviction
+		// runs after our puts or we see the new generation here and take our possibly stale ACLs back out.
+		if (generation != partyHierarchyService.getGeneration()) {
+			log.debug("Party hierarchy changed while loading ACLs, evicting the loaded ACLs");
+			for (Map<ObjectIdentity, PartyMembershipAcl> loadedBatch : loadedBatches) {
+				for (PartyMembershipAcl loadedAcl : loadedBatch.values()) {
+					aclCache.evictFromCache(loadedAcl.getObjectIdentity());
 				}
 			}
 		}
@@ -130,6 +239,84 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 		return result;
 	}
 
+	/**
+	 * Load the ACLs of the given object identities straight from the database, without reading or writing the ACL
+	 * cache, e.g. to read back uncommitted changes within a transaction.
+	 *
+	 * @param objects The object identities to load the ACLs of.
+	 * @param sids    If null, _ALL_ ACEs will be loaded, otherwise just for the given SIDs.
+	 *
+	 * @return The loaded ACLs, identities without an ACL are missing from the map.
+	 */
+	public Map<ObjectIdentity, Acl> loadAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+		final List<Set<ObjectIdentity>> batches = new ArrayList<>();
+		Set<ObjectIdentity> batch = new HashSet<>();
+		for (ObjectIdentity oid : objects) {
+			if (null != oid && batch.add(oid) && batch.size() == this.batchSize) {
+				batches.add(batch);
+				batch = new HashSet<>();
+			}
+		}
+		if (!batch.isEmpty()) {
+			batches.add(batch);
+		}
+
+		final Map<ObjectIdentity, Acl> result = new HashMap<>();
+		loadBatches(batches, sids).forEach(result::putAll);
+		return result;
+	}
+
+	/**
+	 * Load each batch of object identities, concurrently on the batch executor when one is configured.
+	 *
+	 * @param batches Independent batches of object identities to load.
+	 * @param sids    If null, _ALL_ ACEs will be loaded, otherwise just for the given SIDs.
+	 *
+	 * @return The loaded ACLs of each batch, in batch order.
+	 */
+	private List<Map<ObjectIdentity, PartyMembershipAcl>> loadBatches(List<Set<ObjectIdentity>> batches,
+																	  List<Sid> sids) {
+		final Executor executor = this.batchExecutor;
+		final List<Map<ObjectIdentity, PartyMembershipAcl>> loaded = new ArrayList<>(batches.size());
+
+		if (null == executor || batches.size() < 2) {
+			for (Set<ObjectIdentity> batch : batches) {
+				loaded.add(lookupObjectIdentities(batch, sids));
+			}
+			return loaded;
+		}
+
+		log.trace("Loading {} ACL batches concurrently", batches.size());
+
+		final List<CompletableFuture<Map<ObjectIdentity, PartyMembershipAcl>>> futures = new ArrayList<>(batches.size());
+		for (Set<ObjectIdentity> batch : batches) {
+			CompletableFuture<Map<ObjectIdentity, PartyMembershipAcl>> future;
+			try {
+				future = CompletableFuture.supplyAsync(() -> lookupObjectIdentities(batch, sids), executor);
+			}
+			catch (RejectedExecutionException ex) {
+				// The executor's queue is full, load this batch here instead
+				future = CompletableFuture.completedFuture(lookupObjectIdentities(batch, sids));
+			}
+			futures.add(future);
+		}
+
+		try {
+			for (CompletableFuture<Map<ObjectIdentity, PartyMembershipAcl>> future : futures) {
+				loaded.add(future.join());
+			}
+		}
+		catch (CompletionException ex) {
+			futures.forEach(f -> f.cancel(false));
+			if (ex.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) ex.getCause();
+			}
+			throw ex;
+		}
+
+		return loaded;
+	}
+
 	private PartyObjectIdentity getPartyIdentity(ObjectIdentity oid) {
 		if (null == oid) {
 			throw new NullPointerException("ObjectIdentity cannot be null");
@@ -142,15 +329,134 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 		return partyIdRetriever.createObjectIdentity(oid.getIdentifier(), oid.getType());
 	}
 
+	/**
+	 * Query for the {@link PartyMembership} entries of the given parties, optionally limited to the given principals.
+	 * <p>
+	 * Parties are grouped by type and the resulting IN-lists are chunked to {@link #maxInClauseSize} so that large
+	 * batches stay within the limits of the JDBC driver/database; one query is issued per chunk.
+	 *
+	 * @param objectIdentities The parties to find memberships for.
+	 * @param principals       If null, memberships for _ALL_ users are loaded, otherwise just for the given principals.
+	 *
+	 * @return The memberships found, in no particular order.
+	 */
 	private List<PartyMembership> getPartyMemberships(Collection<? extends ObjectIdentity> objectIdentities,
 													  Collection<PrincipalSid> principals) {
+		if (null == objectIdentities || objectIdentities.isEmpty()) {
+			return Collections.emptyList();
+		}
 
+		final List<PartyObjectIdentity> pids = objectIdentities.stream()
+															   .filter(Objects::nonNull)
+															   .map(this::toPartyObjectIdentity)
+															   .distinct()
+															   .collect(Collectors.toList());
 
-		// Query for all the party membership entries, given the filter criteria.
-		return Collections.emptyList();
+		final List<String> usernames;
+		if (null == principals) {
+			usernames = null;
+		}
+		else {
+			usernames = principals.stream().map(PrincipalSid::getPrincipal).distinct().collect(Collectors.toList());
+			if (usernames.isEmpty()) {
+				return Collections.emptyList();
+			}
+		}
+
+		final PartyMembershipResultSetExtractor extractor = new PartyMembershipResultSetExtractor(permissionFactory);
+		final List<PartyMembership> memberships = new ArrayList<>();
+
+		for (List<PartyObjectIdentity> pidChunk : chunk(pids, maxInClauseSize)) {
+			if (null == usernames) {
+				memberships.addAll(queryPartyMemberships(pidChunk, null, extractor));
+				continue;
+			}
+			for (List<String> usernameChunk : chunk(usernames, maxInClauseSize)) {
+				memberships.addAll(queryPartyMemberships(pidChunk, usernameChunk, extractor));
+			}
+		}
+
+		return memberships;
+	}
+
+	private List<PartyMembership> queryPartyMemberships(List<PartyObjectIdentity> pids,
+														List<String> usernames,
+														PartyMembershipResultSetExtractor extractor) {
+		final StringBuilder sql = new StringBuilder(selectClause).append(" WHERE (");
+		final List<Object> params = new ArrayList<>(pids.size() + (null == usernames ? 0 : usernames.size()));
+
+		sql.append(partyFilter(pids, "pm", params)).append(')');
+
+		if (null != usernames) {
+			sql.append(" AND u.username IN (").append(placeholders(usernames.size())).append(')');
+			params.addAll(usernames);
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("Querying PartyMemberships for {} parties and {} principals",
+					  pids.size(),
+					  null == usernames ? "all" : usernames.size());
+		}
+
+		return jdbcTemplate.query(sql.toString(), params.toArray(), extractor);
+	}
+
+	/**
+	 * Build a SQL filter matching the given parties, grouped by party type.
+	 *
+	 * @param pids   The parties to match.
+	 * @param alias  Table alias of the {@literal party_type}/{@literal party_code} columns.
+	 * @param params The bind parameters of the filter are appended to this list.
+	 *
+	 * @return A filter of the form {@code (alias.party_type = ? AND alias.party_code IN (?,...)) OR ...}
+	 */
+	public static String partyFilter(List<PartyObjectIdentity> pids, String alias, List<Object> params) {
+		final Map<MembershipPartyType, List<String>> codesByType = new EnumMap<>(MembershipPartyType.class);
+		for (PartyObjectIdentity pid : pids) {
+			codesByType.computeIfAbsent(pid.getPartyType(), t -> new ArrayList<>()).add(pid.getPartyCode());
+		}
+
+		final StringBuilder sql = new StringBuilder();
+		for (Map.Entry<MembershipPartyType, List<String>> e : codesByType.entrySet()) {
+			if (sql.length() > 0) {
+				sql.append(" OR ");
+			}
+			sql.append('(')
+			   .append(alias)
+			   .append(".party_type = ? AND ")
+			   .append(alias)
+			   .append(".party_code IN (")
+			   .append(placeholders(e.getValue().size()))
+			   .append("))");
+			params.add(e.getKey().name());
+			params.addAll(e.getValue());
+		}
+		return sql.toString();
+	}
+
+	private PartyObjectIdentity toPartyObjectIdentity(ObjectIdentity oid) {
+		if (oid instanceof PartyObjectIdentity) {
+			return (PartyObjectIdentity) oid;
+		}
+		return new PartyObjectIdentity(oid);
+	}
+
+	private static String placeholders(int count) {
+		return String.join(",", Collections.nCopies(count, "?"));
+	}
 
-		// An implementation would look something like this:
-		// return jdbcTemplate.query(sql, params, new PartyMembershipResultSetExtractor(permissionFactory));
+	/**
+	 * Split the given values into consecutive chunks of at most the given size, e.g. to bound the length of IN-lists.
+	 */
+	public static <T> List<List<T>> chunk(List<T> values, int size) {
+		if (values.size() <= size) {
+			return Collections.singletonList(values);
+		}
+		List<List<T>> chunks = new ArrayList<>((values.size() / size) + 1);
+		for (int i = 0; i < values.size(); i += size) {
+			chunks.add(values.subList(i, Math.min(i + size, values.size())));
+		}
+		return chunks;
 	}
 
 	/**
@@ -167,18 +473,10 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 			return;
 		}
 
-		List<PrincipalSid> principals = null;
-		//        TODO: Not currently implemented, as we currently just load everything at once for now.
-		//        if (null != sids) {
-		//            principals = sids.stream()
-		//                             .filter(s -> s instanceof PrincipalSid)
-		//                             .map(s -> (PrincipalSid) s)
-		//                             .distinct()
-		//                             .collect(Collectors.toList());
-		//            if (principals.isEmpty()) {
-		//                return;
-		//            }
-		//        }
+		List<PrincipalSid> principals = getPrincipals(sids);
+		if (null != principals && principals.isEmpty()) {
+			return;
+		}
 
 		List<PartyObjectIdentity> parents = partyHierarchyService.getAncestors(pid);
 		if (parents.isEmpty()) {
@@ -188,16 +486,20 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 		log.debug("Loading inherited ACE entries for {}", acl.getObjectIdentity().getIdentifier());
 
 		// For each parent PartyMembership entry that has isInheriting = true, we want to create an ACE for this ACL
-		final List<PartyMembership> parentMemberships = getPartyMemberships(parents, principals);
+		applyInheritedMemberships(acl, getPartyMemberships(parents, principals));
+	}
+
+	/**
+	 * Create (or combine) an inherited ACE on the given ACL for every inheriting parent {@link PartyMembership}.
+	 *
+	 * @param acl               The ACL to populate with inherited ACE entries.
+	 * @param parentMemberships Memberships of the ACL's ancestor parties.
+	 */
+	private void applyInheritedMemberships(final PartyMembershipAcl acl, List<PartyMembership> parentMemberships) {
 		parentMemberships.stream().filter(PartyMembership::isInheriting).forEach(m -> {
 			PrincipalSid sid = m.getPrincipalSid();
 			AccessControlEntryImpl ace = new AccessControlEntryImpl(m.getId(), acl, sid, m, true, false, false);
-			AccessControlEntryImpl existing = acl.getEntries()
-												 .stream()
-												 .filter(e -> e.getSid().equals(sid))
-												 .map(e -> (AccessControlEntryImpl) e)
-												 .findFirst()
-												 .orElse(null);
+			AccessControlEntryImpl existing = (AccessControlEntryImpl) acl.getEntry(sid);
 			// We only want one ACE per user per ACL
 			if (null == existing) {
 				log.debug("Creating new inherited ACE for {}:{} {}",
@@ -210,9 +512,14 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 				// Combine the permissions for now (they should always be equal in reality).
 				int combinedPermissionMask = ace.getPermission().getMask() | existing.getPermission().getMask();
 				if (combinedPermissionMask != existing.getPermission().getMask()) {
-					final Permission newPermission = new CustomPermission(combinedPermissionMask);
-					int index = acl.getEntries().indexOf(existing);
-					acl.updateAce(index, newPermission);
+					final Permission newPermission = permissionFactory.buildFromMask(combinedPermissionMask);
+					acl.putAce(new AccessControlEntryImpl(existing.getId(),
+														  acl,
+														  sid,
+														  newPermission,
+														  existing.isGranting(),
+														  existing.isAuditSuccess(),
+														  existing.isAuditFailure()));
 					log.info("Updating ACE entry with inheritance for {}:{} from {} to {}",
 							 acl.getObjectIdentity().getIdentifier(),
 							 sid.getPrincipal(),
@@ -223,6 +530,81 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 		});
 	}
 
+	/**
+	 * Resolve the ancestors of every given ACL and their inheriting memberships with a single recursive query per
+	 * chunk of {@link #maxInClauseSize} parties, instead of one hierarchy lookup and one membership query per ACL.
+	 *
+	 * @param acls       The ACLs to populate with inherited ACE entries.
+	 * @param principals If null, _ALL_ inherited ACEs will be loaded, otherwise just for the given principals.
+	 */
+	private void loadInheritedAceEntries(final Collection<PartyMembershipAcl> acls, List<PrincipalSid> principals) {
+		if (null != principals && principals.isEmpty()) {
+			return;
+		}
+
+		final Map<PartyObjectIdentity, PartyMembershipAcl> inheritingAcls = new HashMap<>();
+		for (PartyMembershipAcl acl : acls) {
+			PartyObjectIdentity pid = toPartyObjectIdentity(acl.getObjectIdentity());
+			// If we're at FIRM or CLIENT level we don't need to inherit
+			if (pid.getPartyType() != MembershipPartyType.FIRM && pid.getPartyType() != MembershipPartyType.CLIENT) {
+				inheritingAcls.put(pid, acl);
+			}
+		}
+
+		if (inheritingAcls.isEmpty()) {
+			return;
+		}
+
+		final List<String> usernames = null == principals
+									   ? null
+									   : principals.stream()
+												   .map(PrincipalSid::getPrincipal)
+												   .distinct()
+												   .collect(Collectors.toList());
+		final InheritedPartyMembershipResultSetExtractor extractor =
+				new InheritedPartyMembershipResultSetExtractor(permissionFactory);
+
+		for (List<PartyObjectIdentity> pidChunk : chunk(new ArrayList<>(inheritingAcls.keySet()), maxInClauseSize)) {
+			final List<Object> params = new ArrayList<>();
+			final String filter = partyFilter(pidChunk, "ph", params);
+			final StringBuilder sql = new StringBuilder(inheritedSelectClause.replace(PARTY_FILTER_TOKEN, filter));
+
+			if (null != usernames) {
+				sql.append(" AND u.username IN (").append(placeholders(usernames.size())).append(')');
+				params.addAll(usernames);
+			}
+
+			log.debug("Loading inherited ACE entries for {} ObjectIdentities", pidChunk.size());
+
+			Map<PartyObjectIdentity, List<PartyMembership>> inherited = jdbcTemplate.query(sql.toString(),
+																						   params.toArray(),
+																						   extractor);
+			for (Map.Entry<PartyObjectIdentity, List<PartyMembership>> e : inherited.entrySet()) {
+				PartyMembershipAcl acl = inheritingAcls.get(e.getKey());
+				if (null != acl) {
+					applyInheritedMemberships(acl, e.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param sids The SIDs being loaded, may be null.
+	 *
+	 * @return The distinct {@link PrincipalSid}s within {@literal sids}, or {@literal null} if all SIDs are wanted.
+	 */
+	private List<PrincipalSid> getPrincipals(Collection<Sid> sids) {
+		if (null == sids) {
+			return null;
+		}
+
+		return sids.stream()
+				   .filter(s -> s instanceof PrincipalSid)
+				   .map(s -> (PrincipalSid) s)
+				   .distinct()
+				   .collect(Collectors.toList());
+	}
+
 	private Map<ObjectIdentity, PartyMembershipAcl> lookupObjectIdentities(final Collection<ObjectIdentity> objectIdentities,
 																		   Collection<Sid> sids) {
 		if (log.isTraceEnabled()) {
@@ -242,16 +624,24 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 																null,
 																aclAuthorizationStrategy,
 																permissionGrantingStrategy,
-																null);
+																null == sids ? null : new ArrayList<>(sids));
 				// Load all inherited ACEs before continuing on to explicit entries.
 				// The inherited ACE entries will be overwritten with any explicit PartyMembership entries
 				// found in the following lines of code.
-				loadInheritedAceEntries(acl, null);
+				if (!recursiveInheritanceQuery) {
+					loadInheritedAceEntries(acl, sids);
+				}
 				return acl;
 			});
 		}
 
-		final List<PartyMembership> memberships = getPartyMemberships(objectIdentities, null);
+		final List<PrincipalSid> principals = getPrincipals(sids);
+		if (recursiveInheritanceQuery) {
+			loadInheritedAceEntries(acls.values(), principals);
+		}
+		final List<PartyMembership> memberships = (null != principals && principals.isEmpty())
+												  ? Collections.emptyList()
+												  : getPartyMemberships(objectIdentities, principals);
 
 		// For each party membership, create an ACL for each unique OID and fill them with an ACE for every
 		// PartyMembership in the list.
@@ -260,12 +650,7 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 			// Create an ACE for the party's ACL entry.
 			PrincipalSid sid = m.getPrincipalSid();
 			AccessControlEntryImpl ace = new AccessControlEntryImpl(m.getId(), acl, sid, m, true, false, false);
-			AccessControlEntryImpl existing = acl.getEntries()
-												 .stream()
-												 .filter(e -> e.getSid().equals(sid))
-												 .map(e -> (AccessControlEntryImpl) e)
-												 .findFirst()
-												 .orElse(null);
+			AccessControlEntryImpl existing = (AccessControlEntryImpl) acl.getEntry(sid);
 			if (null == existing) {
 				if (log.isDebugEnabled() && m.getPartyType() != MembershipPartyType.FIRM) {
 					log.debug("Could not find existing ACE for {}:{}, adding new permission {}",
@@ -282,9 +667,7 @@ public class PartyMembershipLookupStrategy implements LookupStrategy {
 						  sid.getPrincipal(),
 						  existing.getPermission(),
 						  ace.getPermission());
-				int index = acl.getEntries().indexOf(existing);
-				acl.deleteAce(index);
-				acl.addAce(ace);
+				acl.putAce(ace);
 			}
 		}
 
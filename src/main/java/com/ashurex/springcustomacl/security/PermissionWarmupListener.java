@@ -0,0 +1,190 @@
+package com.ashurex.springcustomacl.security;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
+import com.ashurex.springcustomacl.security.acls.model.AclReadResult;
+import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationListener;
+import org.springframework.security.acls.domain.SidRetrievalStrategyImpl;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.acls.model.SidRetrievalStrategy;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Warms up the permission caches of a user in the background when they authenticate, either through a token grant
+ * or with the first request carrying their token. The user's party memberships are loaded into the
+ * {@code userPermissions} cache, and the ACLs of those parties and their descendants into the ACL cache, so the
+ * first requests after a login don't run every lookup in series on a cold cache.
+ * <p>
+ * A user is warmed up at most once per {@link #setMinWarmupIntervalMillis(long) interval}, as every authenticated
+ * request of a stateless resource server raises a success event. Warm-ups run on the given (bounded) executor, those
+ * it rejects are skipped.
+ *
+ * @author Mustafa Ashurex
+ * @see CustomUserPermissionService
+ * @see PartyHierarchyService
+ */
+@Slf4j
+public class PermissionWarmupListener implements ApplicationListener<AuthenticationSuccessEvent> {
+	private static final int MAX_TRACKED_USERS = 10000;
+
+	private final CustomUserPermissionService userPermissionService;
+	private final PartyHierarchyService partyHierarchyService;
+	private final AclService aclService;
+	private final AclCache aclCache;
+	private final Executor executor;
+	private final Map<String, Long> lastWarmup = new ConcurrentHashMap<>();
+
+	private SidRetrievalStrategy sidRetrievalStrategy = new SidRetrievalStrategyImpl();
+	private long minWarmupIntervalMillis = TimeUnit.MINUTES.toMillis(5);
+	private int batchSize = 100;
+	private int maxObjects = 5000;
+
+	public PermissionWarmupListener(CustomUserPermissionService userPermissionService,
+									PartyHierarchyService partyHierarchyService,
+									AclService aclService,
+									AclCache aclCache,
+									Executor executor) {
+		this.userPermissionService = userPermissionService;
+		this.partyHierarchyService = partyHierarchyService;
+		this.aclService = aclService;
+		this.aclCache = aclCache;
+		this.executor = executor;
+	}
+
+	@Override
+	public void onApplicationEvent(AuthenticationSuccessEvent event) {
+		final Authentication authentication = event.getAuthentication();
+		final String username = authentication.getName();
+		if (null == username || !shouldWarmup(username)) {
+			return;
+		}
+
+		try {
+			executor.execute(() -> warmup(authentication));
+		}
+		catch (RejectedExecutionException ex) {
+			// Warm-ups are best effort, the caches are filled on demand instead.
+			lastWarmup.remove(username);
+			log.debug("Skipping permission warm-up of '{}', warm-up queue is full", username);
+		}
+	}
+
+	private boolean shouldWarmup(String username) {
+		long now = System.currentTimeMillis();
+		Long previous = lastWarmup.get(username);
+		if (null != previous && now - previous < minWarmupIntervalMillis) {
+			return false;
+		}
+
+		if (lastWarmup.size() >= MAX_TRACKED_USERS) {
+			pruneWarmups(now);
+		}
+
+		// Only the thread that swapped in its timestamp warms the user up.
+		return null == previous ? null == lastWarmup.putIfAbsent(username, now)
+								: lastWarmup.replace(username, previous, now);
+	}
+
+	private void pruneWarmups(long now) {
+		Iterator<Long> it = lastWarmup.values().iterator();
+		while (it.hasNext()) {
+			if (now - it.next() >= minWarmupIntervalMillis) {
+				it.remove();
+			}
+		}
+	}
+
+	private void warmup(Authentication authentication) {
+		final String username = authentication.getName();
+		final long start = System.currentTimeMillis();
+
+		try {
+			List<PartyMembership> memberships = userPermissionService.getUserPartyMemberships(username);
+			if (memberships.isEmpty()) {
+				return;
+			}
+
+			// Walk no more of the hierarchy than the objects still allowed within maxObjects
+			Set<ObjectIdentity> oids = new LinkedHashSet<>();
+			for (PartyMembership membership : memberships) {
+				if (oids.size() >= maxObjects) {
+					log.debug("Permission warm-up of '{}' limited to {} ACLs", username, maxObjects);
+					break;
+				}
+
+				PartyObjectIdentity pid = new PartyObjectIdentity(membership.getPartyType(),
+																  membership.getPartyCode());
+				oids.add(pid);
+				partyHierarchyService.forEachPredecessor(pid, maxObjects - oids.size(), oids::add);
+			}
+
+			List<Sid> sids = sidRetrievalStrategy.getSids(authentication);
+			List<ObjectIdentity> misses = new ArrayList<>(oids.size());
+			for (ObjectIdentity oid : oids) {
+				Acl cached = aclCache.getFromCache(oid);
+				if (null == cached || !cached.isSidLoaded(sids)) {
+					misses.add(oid);
+				}
+				if (misses.size() >= maxObjects) {
+					break;
+				}
+			}
+
+			for (int i = 0; i < misses.size(); i += batchSize) {
+				readAcls(misses.subList(i, Math.min(i + batchSize, misses.size())), sids);
+			}
+
+			log.debug("Warmed up {} of {} ACLs for '{}' in {}ms",
+					  misses.size(),
+					  oids.size(),
+					  username,
+					  System.currentTimeMillis() - start);
+		}
+		catch (Exception ex) {
+			log.warn("Permission warm-up of '{}' failed: {}", username, ex.getMessage());
+		}
+	}
+
+	private void readAcls(List<ObjectIdentity> oids, List<Sid> sids) {
+		// Missing ACLs are fine, we're just priming the cache.
+		AclReadResult.read(aclService, oids, sids);
+	}
+
+	public void setSidRetrievalStrategy(SidRetrievalStrategy sidRetrievalStrategy) {
+		this.sidRetrievalStrategy = sidRetrievalStrategy;
+	}
+
+	/**
+	 * @param minWarmupIntervalMillis Minimum time between two warm-ups of the same user.
+	 */
+	public void setMinWarmupIntervalMillis(long minWarmupIntervalMillis) {
+		this.minWarmupIntervalMillis = minWarmupIntervalMillis;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param maxObjects Maximum number of ACLs loaded by a single warm-up.
+	 */
+	public void setMaxObjects(int maxObjects) {
+		this.maxObjects = maxObjects;
+	}
+}
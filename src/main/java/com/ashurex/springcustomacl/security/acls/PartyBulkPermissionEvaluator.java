@@ -0,0 +1,120 @@
+package com.ashurex.springcustomacl.security.acls;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import com.ashurex.springcustomacl.security.acls.model.AclReadResult;
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.domain.ObjectIdentityRetrievalStrategyImpl;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.domain.SidRetrievalStrategyImpl;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.acls.model.SidRetrievalStrategy;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Evaluates the same permission against many domain objects at once, for row-level filtering of listings. SIDs and
+ * permissions are resolved once, the ACLs of all distinct objects are loaded with a single bulk read, and the
+ * decisions are returned as a {@link BitSet} in input order.
+ * <p>
+ * Decisions agree with {@link PartyPermissionEvaluator}: an object without an ACL (or without a matching entry) is
+ * denied, and every index is decided by its ACL so each check is audited. ACLs are shared with other checks through
+ * the {@link RequestScopedAclMemo} of the current request.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyPermissionEvaluator
+ */
+public class PartyBulkPermissionEvaluator {
+	private final AclService aclService;
+	private ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy = new ObjectIdentityRetrievalStrategyImpl();
+	private SidRetrievalStrategy sidRetrievalStrategy = new SidRetrievalStrategyImpl();
+	private PermissionResolver permissionResolver = new PermissionResolver(new DefaultPermissionFactory());
+
+	public PartyBulkPermissionEvaluator(AclService aclService) {
+		this.aclService = aclService;
+	}
+
+	/**
+	 * @param authentication The user to check permissions for.
+	 * @param domainObjects  The objects to check, {@literal null} objects are denied.
+	 * @param permission     The required permission, in any form accepted by {@link PartyPermissionEvaluator}.
+	 *
+	 * @return A set bit for every index of {@code domainObjects} the permission is granted on.
+	 */
+	public BitSet hasPermission(Authentication authentication, List<?> domainObjects, Object permission) {
+		List<ObjectIdentity> oids = new ArrayList<>(domainObjects.size());
+		for (Object domainObject : domainObjects) {
+			oids.add(null == domainObject ? null : objectIdentityRetrievalStrategy.getObjectIdentity(domainObject));
+		}
+		return hasPermissionForIdentities(authentication, oids, permission);
+	}
+
+	/**
+	 * @param authentication The user to check permissions for.
+	 * @param oids           The object identities to check, {@literal null} identities are denied.
+	 * @param permission     The required permission, in any form accepted by {@link PartyPermissionEvaluator}.
+	 *
+	 * @return A set bit for every index of {@code oids} the permission is granted on.
+	 */
+	public BitSet hasPermissionForIdentities(Authentication authentication,
+											 List<ObjectIdentity> oids,
+											 Object permission) {
+		final BitSet granted = new BitSet(oids.size());
+		if (oids.isEmpty()) {
+			return granted;
+		}
+
+		final List<Sid> sids = sidRetrievalStrategy.getSids(authentication);
+		final List<Permission> requiredPermission = permissionResolver.resolve(permission);
+
+		// Read the ACL of each distinct object once, but decide every index on its own so each check is audited.
+		final Set<ObjectIdentity> distinct = new LinkedHashSet<>(oids);
+		distinct.remove(null);
+		if (distinct.isEmpty()) {
+			return granted;
+		}
+
+		AclReadResult acls = AclReadResult.read(aclService, new ArrayList<>(distinct), sids);
+		for (int i = 0; i < oids.size(); i++) {
+			ObjectIdentity oid = oids.get(i);
+			if (null != oid && isGranted(acls.get(oid), requiredPermission, sids)) {
+				granted.set(i);
+			}
+		}
+
+		return granted;
+	}
+
+	private static boolean isGranted(Acl acl, List<Permission> requiredPermission, List<Sid> sids) {
+		if (null == acl) {
+			return false;
+		}
+
+		try {
+			return acl.isGranted(requiredPermission, sids, false);
+		}
+		catch (NotFoundException nfe) {
+			return false;
+		}
+	}
+
+	public void setObjectIdentityRetrievalStrategy(ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy) {
+		this.objectIdentityRetrievalStrategy = objectIdentityRetrievalStrategy;
+	}
+
+	public void setSidRetrievalStrategy(SidRetrievalStrategy sidRetrievalStrategy) {
+		this.sidRetrievalStrategy = sidRetrievalStrategy;
+	}
+
+	public void setPermissionFactory(PermissionFactory permissionFactory) {
+		this.permissionResolver = new PermissionResolver(permissionFactory);
+	}
+}
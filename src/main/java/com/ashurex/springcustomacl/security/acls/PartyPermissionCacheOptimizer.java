@@ -3,17 +3,28 @@ package com.ashurex.springcustomacl.security.acls;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import com.ashurex.springcustomacl.security.acls.model.AclReadResult;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.access.PermissionCacheOptimizer;
 import org.springframework.security.acls.domain.SidRetrievalStrategyImpl;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclCache;
 import org.springframework.security.acls.model.AclService;
-import org.springframework.security.acls.model.NotFoundException;
 import org.springframework.security.acls.model.ObjectIdentity;
 import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
 import org.springframework.security.acls.model.Sid;
 import org.springframework.security.acls.model.SidRetrievalStrategy;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.Assert;
 
 /**
  * Implementation of {@link PermissionCacheOptimizer} that is basically a 'safer' version of
@@ -28,6 +39,10 @@ public class PartyPermissionCacheOptimizer implements PermissionCacheOptimizer {
 	private final AclService aclService;
 	private final ObjectIdentityRetrievalStrategy oidRetrievalStrategy;
 	private SidRetrievalStrategy sidRetrievalStrategy = new SidRetrievalStrategyImpl();
+	private AclCache aclCache;
+	private Executor asyncExecutor;
+	private int batchSize = 100;
+	private int maxConcurrentBatches = 2;
 
 	public PartyPermissionCacheOptimizer(AclService aclService, ObjectIdentityRetrievalStrategy oidRetrievalStrategy) {
 		this.aclService = aclService;
@@ -40,7 +55,8 @@ public class PartyPermissionCacheOptimizer implements PermissionCacheOptimizer {
 			return;
 		}
 
-		List<ObjectIdentity> oidsToCache = new ArrayList<>(objects.size());
+		// Listings often repeat the same object, only resolve each distinct identity once.
+		Set<ObjectIdentity> oidsToCache = new LinkedHashSet<>(objects.size() * 2);
 
 		for (Object domainObject : objects) {
 			if (domainObject == null) {
@@ -68,25 +84,162 @@ public class PartyPermissionCacheOptimizer implements PermissionCacheOptimizer {
 			}
 		}
 
+		List<ObjectIdentity> misses = findMisses(oidsToCache, sids);
+		if (misses.isEmpty()) {
+			return;
+		}
+
+		if (log.isTraceEnabled()) {
+			log.trace("Eagerly loading Acls for " + misses.size() + " of " + oidsToCache.size() + " objects");
+		}
+
+		RequestScopedAclMemo memo = null == asyncExecutor ? null : RequestScopedAclMemo.current();
+		if (null != memo) {
+			prefetch(misses, sids, memo);
+			return;
+		}
+
+		// Load chunk by chunk so a failure only loses the ACLs of its own chunk.
+		for (int i = 0; i < misses.size(); i += batchSize) {
+			readAcls(misses.subList(i, Math.min(i + batchSize, misses.size())), sids);
+		}
+	}
+
+	/**
+	 * @return The identities whose ACLs aren't in the ACL cache yet, or were cached without all of the SIDs loaded.
+	 */
+	private List<ObjectIdentity> findMisses(Set<ObjectIdentity> oids, List<Sid> sids) {
+		if (null == aclCache) {
+			return new ArrayList<>(oids);
+		}
+
+		List<ObjectIdentity> misses = new ArrayList<>(oids.size());
+		for (ObjectIdentity oid : oids) {
+			try {
+				Acl acl = aclCache.getFromCache(oid);
+				if (null != acl && acl.isSidLoaded(sids)) {
+					continue;
+				}
+			}
+			catch (Exception ex) {
+				log.debug("Could not read cached Acl for {}: {}", oid, ex.getMessage());
+			}
+			misses.add(oid);
+		}
+		return misses;
+	}
+
+	/**
+	 * Load the ACLs in batches on the async executor, registering a future per batch with the request memo so each
+	 * permission check only waits for the batch holding its own ACL. Only a limited number of batches of a request
+	 * load at once, the next batch starts when one completes.
+	 */
+	private void prefetch(List<ObjectIdentity> oids, List<Sid> sids, RequestScopedAclMemo memo) {
+		final Queue<PrefetchBatch> queue = new ConcurrentLinkedQueue<>();
+		for (int i = 0; i < oids.size(); i += batchSize) {
+			PrefetchBatch batch = new PrefetchBatch(oids.subList(i, Math.min(i + batchSize, oids.size())));
+			memo.putPending(batch.oids, batch.future);
+			queue.add(batch);
+		}
+
 		if (log.isTraceEnabled()) {
-			log.trace("Eagerly loading Acls for " + oidsToCache.size() + " objects");
+			log.trace("Prefetching Acls for " + oids.size() + " objects in " + queue.size() + " batches");
+		}
+
+		int lanes = Math.min(maxConcurrentBatches, queue.size());
+		for (int i = 0; i < lanes; i++) {
+			submitNext(queue, sids);
+		}
+	}
+
+	private void submitNext(Queue<PrefetchBatch> queue, List<Sid> sids) {
+		final PrefetchBatch batch = queue.poll();
+		if (null == batch) {
+			return;
 		}
 
 		try {
-			aclService.readAclsById(oidsToCache, sids);
+			asyncExecutor.execute(() -> {
+				// Request threads wait on the future, it must complete whatever happens to this task
+				try {
+					batch.future.complete(readAcls(batch.oids, sids));
+				}
+				catch (Throwable ex) {
+					batch.future.completeExceptionally(ex);
+					throw ex;
+				}
+				finally {
+					submitNext(queue, sids);
+				}
+			});
 		}
-		catch (NotFoundException ex) {
-			// It's okay for NFEs to be thrown since we're just priming the cache.
-			log.debug(ex.getMessage());
+		catch (RejectedExecutionException ex) {
+			// The executor is saturated, leave this and the remaining batches to be loaded on demand.
+			log.debug("ACL prefetch rejected, {} batches will be loaded on demand", queue.size() + 1);
+			batch.future.complete(Collections.emptyMap());
+			PrefetchBatch remaining;
+			while (null != (remaining = queue.poll())) {
+				remaining.future.complete(Collections.emptyMap());
+			}
+		}
+	}
+
+	private Map<ObjectIdentity, Acl> readAcls(List<ObjectIdentity> oids, List<Sid> sids) {
+		try {
+			AclReadResult result = AclReadResult.read(aclService, oids, sids);
+			if (log.isTraceEnabled() && !result.getMissing().isEmpty()) {
+				log.trace("No Acls found for " + result.getMissing().size() + " of " + oids.size() + " objects");
+			}
+			return result.getFound();
 		}
 		catch (Exception ex) {
-			// For now, we don't want exceptions in the cache optimizer to blow anything else up.
-			// At some point we may want to let certain exceptions through.
-			log.error(ex.getMessage(), ex.getCause());
+			// We don't want exceptions in the cache optimizer to blow anything else up, or stop the other chunks.
+			log.error("Failed to prefetch Acls for " + oids.size() + " objects: " + ex.getMessage(), ex);
 		}
+		return Collections.emptyMap();
+	}
+
+	/**
+	 * @param aclCache If set, identities whose ACLs are already cached (for the current SIDs) are not loaded again.
+	 */
+	public void setAclCache(AclCache aclCache) {
+		this.aclCache = aclCache;
+	}
+
+	/**
+	 * @param asyncExecutor If set, ACLs are prefetched asynchronously on this (bounded) executor when there is a
+	 *                      current request, instead of being loaded on the calling thread.
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * @param batchSize Number of identities loaded per chunk, should match the lookup strategy's batch size.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param maxConcurrentBatches Maximum number of batches of a single prefetch loading at the same time.
+	 */
+	public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+		Assert.isTrue(maxConcurrentBatches > 0, "maxConcurrentBatches must be greater than 0");
+		this.maxConcurrentBatches = maxConcurrentBatches;
 	}
 
 	public void setSidRetrievalStrategy(SidRetrievalStrategy sidRetrievalStrategy) {
 		this.sidRetrievalStrategy = sidRetrievalStrategy;
 	}
+
+	private static final class PrefetchBatch {
+		private final List<ObjectIdentity> oids;
+		private final CompletableFuture<Map<ObjectIdentity, Acl>> future = new CompletableFuture<>();
+
+		private PrefetchBatch(List<ObjectIdentity> oids) {
+			this.oids = oids;
+		}
+	}
 }
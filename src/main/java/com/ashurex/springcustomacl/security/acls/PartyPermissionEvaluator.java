@@ -0,0 +1,113 @@
+package com.ashurex.springcustomacl.security.acls;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import com.ashurex.springcustomacl.security.acls.model.AclReadResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.domain.ObjectIdentityRetrievalStrategyImpl;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.domain.SidRetrievalStrategyImpl;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.ObjectIdentityGenerator;
+import org.springframework.security.acls.model.ObjectIdentityRetrievalStrategy;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.security.acls.model.SidRetrievalStrategy;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Implementation of {@link PermissionEvaluator} equivalent to
+ * {@link org.springframework.security.acls.AclPermissionEvaluator}. Every check is decided by the ACL itself, so it
+ * reaches the {@link org.springframework.security.acls.domain.AuditLogger}; only the ACL is memoized for the life of
+ * the current request, by the {@link AclService} using {@link RequestScopedAclMemo}.
+ *
+ * @author Mustafa Ashurex
+ * @see org.springframework.security.acls.AclPermissionEvaluator
+ * @see RequestScopedAclMemo
+ */
+@Slf4j
+public class PartyPermissionEvaluator implements PermissionEvaluator {
+	private final AclService aclService;
+	private ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy = new ObjectIdentityRetrievalStrategyImpl();
+	private ObjectIdentityGenerator objectIdentityGenerator = new ObjectIdentityRetrievalStrategyImpl();
+	private SidRetrievalStrategy sidRetrievalStrategy = new SidRetrievalStrategyImpl();
+	private PermissionResolver permissionResolver = new PermissionResolver(new DefaultPermissionFactory());
+
+	public PartyPermissionEvaluator(AclService aclService) {
+		this.aclService = aclService;
+	}
+
+	@Override
+	public boolean hasPermission(Authentication authentication, Object domainObject, Object permission) {
+		if (domainObject == null) {
+			return false;
+		}
+
+		ObjectIdentity oid = objectIdentityRetrievalStrategy.getObjectIdentity(domainObject);
+		return checkPermission(authentication, oid, permission);
+	}
+
+	@Override
+	public boolean hasPermission(Authentication authentication,
+								 Serializable targetId,
+								 String targetType,
+								 Object permission) {
+		ObjectIdentity oid = objectIdentityGenerator.createObjectIdentity(targetId, targetType);
+		return checkPermission(authentication, oid, permission);
+	}
+
+	private boolean checkPermission(Authentication authentication, ObjectIdentity oid, Object permission) {
+		if (null == oid) {
+			return false;
+		}
+
+		final List<Sid> sids = sidRetrievalStrategy.getSids(authentication);
+		final List<Permission> requiredPermission = permissionResolver.resolve(permission);
+		return isGranted(oid, requiredPermission, sids);
+	}
+
+	private boolean isGranted(ObjectIdentity oid, List<Permission> requiredPermission, List<Sid> sids) {
+		log.trace("Checking permission '{}' for object '{}'", requiredPermission, oid);
+
+		Acl acl = AclReadResult.read(aclService, Collections.singletonList(oid), sids).get(oid);
+		if (null == acl) {
+			log.trace("Returning false - no ACLs apply for this principal");
+			return false;
+		}
+
+		try {
+			if (acl.isGranted(requiredPermission, sids, false)) {
+				log.trace("Access is granted");
+				return true;
+			}
+			log.trace("Returning false - ACLs returned, but insufficient permissions for this principal");
+		}
+		catch (NotFoundException nfe) {
+			log.trace("Returning false - no ACLs apply for this principal");
+		}
+
+		return false;
+	}
+
+	public void setObjectIdentityRetrievalStrategy(ObjectIdentityRetrievalStrategy objectIdentityRetrievalStrategy) {
+		this.objectIdentityRetrievalStrategy = objectIdentityRetrievalStrategy;
+	}
+
+	public void setObjectIdentityGenerator(ObjectIdentityGenerator objectIdentityGenerator) {
+		this.objectIdentityGenerator = objectIdentityGenerator;
+	}
+
+	public void setSidRetrievalStrategy(SidRetrievalStrategy sidRetrievalStrategy) {
+		this.sidRetrievalStrategy = sidRetrievalStrategy;
+	}
+
+	public void setPermissionFactory(PermissionFactory permissionFactory) {
+		this.permissionResolver = new PermissionResolver(permissionFactory);
+	}
+}
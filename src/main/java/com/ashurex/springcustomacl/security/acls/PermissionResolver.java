@@ -0,0 +1,91 @@
+package com.ashurex.springcustomacl.security.acls;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.security.acls.domain.PermissionFactory;
+import org.springframework.security.acls.model.Permission;
+
+/**
+ * Resolves the permission argument of {@code hasPermission} expressions the same way as
+ * {@link org.springframework.security.acls.AclPermissionEvaluator}, caching the result for permission names.
+ * <p>
+ * Names are resolved once per distinct string. A comma separated list of names (e.g. {@code 'TX_READ,POS_READ'})
+ * compiles to a single permission with the combined mask, so every named permission is required.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyPermissionEvaluator
+ * @see PartyBulkPermissionEvaluator
+ */
+class PermissionResolver {
+	/**
+	 * Upper bound on the number of cached permission names, names are finite in practice (they come from
+	 * expressions) but the evaluator also accepts arbitrary strings.
+	 */
+	private static final int MAX_CACHED_NAMES = 1024;
+
+	private final PermissionFactory permissionFactory;
+	private final Map<String, List<Permission>> namedPermissions = new ConcurrentHashMap<>();
+
+	PermissionResolver(PermissionFactory permissionFactory) {
+		this.permissionFactory = permissionFactory;
+	}
+
+	List<Permission> resolve(Object permission) {
+		if (permission instanceof Integer) {
+			return Collections.singletonList(permissionFactory.buildFromMask((Integer) permission));
+		}
+
+		if (permission instanceof Permission) {
+			return Collections.singletonList((Permission) permission);
+		}
+
+		if (permission instanceof Permission[]) {
+			return Arrays.asList((Permission[]) permission);
+		}
+
+		if (permission instanceof String) {
+			String permString = (String) permission;
+			List<Permission> resolved = namedPermissions.get(permString);
+			if (null == resolved) {
+				resolved = Collections.singletonList(compile(permString));
+				if (namedPermissions.size() < MAX_CACHED_NAMES) {
+					namedPermissions.putIfAbsent(permString, resolved);
+				}
+			}
+			return resolved;
+		}
+
+		throw new IllegalArgumentException("Unsupported permission: " + permission);
+	}
+
+	private Permission compile(String permString) {
+		if (permString.indexOf(',') < 0) {
+			return buildFromName(permString);
+		}
+
+		int mask = 0;
+		for (String name : permString.split(",")) {
+			mask |= buildFromName(name.trim()).getMask();
+		}
+		return permissionFactory.buildFromMask(mask);
+	}
+
+	private Permission buildFromName(String name) {
+		Permission p;
+
+		try {
+			p = permissionFactory.buildFromName(name);
+		}
+		catch (IllegalArgumentException notfound) {
+			p = permissionFactory.buildFromName(name.toUpperCase());
+		}
+
+		if (null == p) {
+			throw new IllegalArgumentException("Unsupported permission: " + name);
+		}
+		return p;
+	}
+}
@@ -0,0 +1,116 @@
+package com.ashurex.springcustomacl.security.acls;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Memo of resolved ACLs that lives for the duration of a single request, so repeated permission checks on the same
+ * object within a request don't go back to the ACL cache. Decisions themselves are not memoized, every check still
+ * goes through {@link Acl#isGranted} and so reaches the audit logger.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyPermissionEvaluator
+ * @see com.ashurex.springcustomacl.security.acls.model.PartyMembershipAclService
+ */
+public class RequestScopedAclMemo {
+	private static final String ATTRIBUTE_NAME = RequestScopedAclMemo.class.getName();
+
+	private final Map<ObjectIdentity, Acl> acls = new ConcurrentHashMap<>();
+	private final Map<ObjectIdentity, CompletableFuture<Map<ObjectIdentity, Acl>>> pending =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * @return The memo bound to the current request, or {@literal null} if there is no current request.
+	 */
+	public static RequestScopedAclMemo current() {
+		RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+		if (null == attributes) {
+			return null;
+		}
+
+		Object memo = attributes.getAttribute(ATTRIBUTE_NAME, RequestAttributes.SCOPE_REQUEST);
+		if (null == memo) {
+			memo = new RequestScopedAclMemo();
+			attributes.setAttribute(ATTRIBUTE_NAME, memo, RequestAttributes.SCOPE_REQUEST);
+		}
+
+		return (RequestScopedAclMemo) memo;
+	}
+
+	/**
+	 * @param oid  The object identity to find an ACL for.
+	 * @param sids The SIDs the ACL must have been loaded for, may be null.
+	 *
+	 * @return The memoized ACL, or {@literal null} if none was resolved (for the given SIDs) during this request.
+	 */
+	public Acl getAcl(ObjectIdentity oid, List<Sid> sids) {
+		Acl acl = acls.get(oid);
+		if (null != acl && acl.isSidLoaded(sids)) {
+			return acl;
+		}
+		return null;
+	}
+
+	public void putAcl(Acl acl) {
+		acls.put(acl.getObjectIdentity(), acl);
+	}
+
+	/**
+	 * Forget the ACL of the given object, after it changed.
+	 */
+	public void evict(ObjectIdentity oid) {
+		acls.remove(oid);
+		pending.remove(oid);
+	}
+
+	/**
+	 * Register an asynchronous prefetch of the ACLs of the given objects.
+	 *
+	 * @see PartyPermissionCacheOptimizer
+	 */
+	public void putPending(Collection<ObjectIdentity> oids, CompletableFuture<Map<ObjectIdentity, Acl>> future) {
+		oids.forEach(oid -> pending.put(oid, future));
+	}
+
+	/**
+	 * Wait for the prefetch of the object's ACL started during this request, if any, and memoize the ACL it loaded.
+	 * Only the batch holding this object is waited on, not the whole prefetch, and for no longer than the given
+	 * timeout; if the prefetch fails or times out the whole batch is given up on, so the other objects of the batch
+	 * don't wait on it again, and the callers load their ACLs themselves.
+	 *
+	 * @param oid           The object identity whose ACL is about to be read.
+	 * @param timeoutMillis Maximum time to wait for the prefetch of the ACL.
+	 */
+	public void awaitPending(ObjectIdentity oid, long timeoutMillis) {
+		CompletableFuture<Map<ObjectIdentity, Acl>> future = pending.remove(oid);
+		if (null == future) {
+			return;
+		}
+
+		try {
+			Acl acl = future.get(timeoutMillis, TimeUnit.MILLISECONDS).get(oid);
+			if (null != acl) {
+				putAcl(acl);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			pending.values().removeIf(batch -> batch == future);
+		}
+		catch (CancellationException | ExecutionException | TimeoutException ex) {
+			pending.values().removeIf(batch -> batch == future);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.acls.domain.AuditLogger;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
+import org.springframework.util.Assert;
+
+/**
+ * {@link AuditLogger} that keeps auditing off the grant decision path. Events are published to a bounded lock-free
+ * ring buffer and written in batches to an {@link AuditEventSink} by a background drainer thread.
+ *
+ * @author Mustafa Ashurex
+ * @see org.springframework.security.acls.domain.ConsoleAuditLogger
+ */
+@Slf4j
+public class AsyncAuditLogger implements AuditLogger, InitializingBean, DisposableBean {
+	/**
+	 * What to do with an event when the ring buffer is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Drop the event and count it.
+		 */
+		DROP,
+		/**
+		 * Write the event to the sink on the calling thread.
+		 */
+		CALLER_RUNS,
+		/**
+		 * Wait for the drainer to free a slot.
+		 */
+		BLOCK
+	}
+
+	private final AuditEventSink sink;
+	private final MpscRingBuffer<AuditEvent> buffer;
+	private final LongAdder published = new LongAdder();
+	private final LongAdder dropped = new LongAdder();
+	private final LongAdder failed = new LongAdder();
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+	private int batchSize = 256;
+	private long idleWaitNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+	private volatile boolean running;
+	private Thread drainer;
+
+	public AsyncAuditLogger(AuditEventSink sink, int bufferSize) {
+		Assert.notNull(sink, "sink cannot be null");
+		this.sink = sink;
+		this.buffer = new MpscRingBuffer<>(bufferSize);
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		Assert.notNull(overflowPolicy, "overflowPolicy cannot be null");
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * @param batchSize Maximum number of events handed to the sink at once.
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param idleWaitMillis How long the drainer sleeps when the buffer is empty.
+	 */
+	public void setIdleWaitMillis(long idleWaitMillis) {
+		this.idleWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, idleWaitMillis));
+	}
+
+	/**
+	 * @return Number of events accepted into the buffer (or written by the caller).
+	 */
+	public long getPublishedCount() {
+		return published.sum();
+	}
+
+	/**
+	 * @return Number of events dropped because the buffer was full or the logger was stopped.
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return Number of events lost because the sink failed to write them.
+	 */
+	public long getFailedCount() {
+		return failed.sum();
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		running = true;
+		drainer = new Thread(this::drain, "acl-audit-drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		Thread thread = this.drainer;
+		if (null != thread) {
+			LockSupport.unpark(thread);
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+	}
+
+	@Override
+	public void logIfNeeded(boolean granted, AccessControlEntry ace) {
+		if (!(ace instanceof AuditableAccessControlEntry)) {
+			return;
+		}
+
+		AuditableAccessControlEntry auditableAce = (AuditableAccessControlEntry) ace;
+		if (granted ? !auditableAce.isAuditSuccess() : !auditableAce.isAuditFailure()) {
+			return;
+		}
+
+		publish(new AuditEvent(System.currentTimeMillis(), granted, ace));
+	}
+
+	private void publish(AuditEvent event) {
+		if (!running) {
+			dropped.increment();
+			return;
+		}
+
+		if (buffer.offer(event)) {
+			published.increment();
+			return;
+		}
+
+		switch (overflowPolicy) {
+			case CALLER_RUNS:
+				published.increment();
+				write(Collections.singletonList(event));
+				break;
+			case BLOCK:
+				while (!buffer.offer(event)) {
+					if (!running) {
+						dropped.increment();
+						return;
+					}
+					LockSupport.parkNanos(1000L);
+				}
+				published.increment();
+				break;
+			default:
+				dropped.increment();
+		}
+	}
+
+	private void drain() {
+		List<AuditEvent> batch = new ArrayList<>(batchSize);
+		while (running) {
+			if (drainBatch(batch) == 0) {
+				LockSupport.parkNanos(this, idleWaitNanos);
+			}
+		}
+
+		// Flush whatever was published before shutdown.
+		while (drainBatch(batch) > 0) {
+			// keep draining
+		}
+	}
+
+	private int drainBatch(List<AuditEvent> batch) {
+		AuditEvent event;
+		while (batch.size() < batchSize && null != (event = buffer.poll())) {
+			batch.add(event);
+		}
+
+		int size = batch.size();
+		if (size > 0) {
+			write(batch);
+			batch.clear();
+		}
+		return size;
+	}
+
+	private void write(List<AuditEvent> events) {
+		try {
+			sink.write(events);
+		}
+		catch (Exception ex) {
+			failed.add(events.size());
+			log.warn("Failed to write {} ACL audit event(s): {}", events.size(), ex.getMessage());
+		}
+	}
+}
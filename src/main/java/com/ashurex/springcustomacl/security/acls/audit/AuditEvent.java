@@ -0,0 +1,23 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import lombok.Getter;
+import org.springframework.security.acls.model.AccessControlEntry;
+
+/**
+ * A single audited grant decision. Only the references are captured on the request thread, formatting is deferred
+ * to the {@link AuditEventSink}.
+ *
+ * @author Mustafa Ashurex
+ */
+@Getter
+public final class AuditEvent {
+	private final long timestamp;
+	private final boolean granted;
+	private final AccessControlEntry ace;
+
+	public AuditEvent(long timestamp, boolean granted, AccessControlEntry ace) {
+		this.timestamp = timestamp;
+		this.granted = granted;
+		this.ace = ace;
+	}
+}
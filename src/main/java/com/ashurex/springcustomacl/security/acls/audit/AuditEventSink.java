@@ -0,0 +1,14 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import java.util.List;
+
+/**
+ * Destination for batches of {@link AuditEvent}s drained by the {@link AsyncAuditLogger}.
+ * Implementations must be thread safe, a sink may also be called from request threads when the
+ * {@link AsyncAuditLogger.OverflowPolicy#CALLER_RUNS} policy is used.
+ *
+ * @author Mustafa Ashurex
+ */
+public interface AuditEventSink {
+	void write(List<AuditEvent> events) throws Exception;
+}
@@ -0,0 +1,76 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Writes each batch of audit events to an audit table with a single JDBC batch insert.
+ *
+ * @author Mustafa Ashurex
+ */
+public class JdbcAuditEventSink implements AuditEventSink {
+	public static final String DEFAULT_INSERT_SQL =
+			"INSERT INTO acl_audit (created_at, granted, ace_id, sid, object_type, object_identifier, permission_mask) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbcTemplate;
+	private String insertSql = DEFAULT_INSERT_SQL;
+
+	public JdbcAuditEventSink(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	public void setInsertSql(String insertSql) {
+		this.insertSql = insertSql;
+	}
+
+	@Override
+	public void write(final List<AuditEvent> events) {
+		jdbcTemplate.batchUpdate(insertSql, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				AuditEvent event = events.get(i);
+				AccessControlEntry ace = event.getAce();
+				ObjectIdentity oid = ace.getAcl().getObjectIdentity();
+
+				ps.setTimestamp(1, new Timestamp(event.getTimestamp()));
+				ps.setBoolean(2, event.isGranted());
+				if (ace.getId() instanceof Number) {
+					ps.setLong(3, ((Number) ace.getId()).longValue());
+				}
+				else {
+					ps.setNull(3, Types.BIGINT);
+				}
+				ps.setString(4, toString(ace.getSid()));
+				ps.setString(5, oid.getType());
+				ps.setString(6, String.valueOf(oid.getIdentifier()));
+				ps.setInt(7, ace.getPermission().getMask());
+			}
+
+			@Override
+			public int getBatchSize() {
+				return events.size();
+			}
+		});
+	}
+
+	private static String toString(Sid sid) {
+		if (sid instanceof PrincipalSid) {
+			return ((PrincipalSid) sid).getPrincipal();
+		}
+		if (sid instanceof GrantedAuthoritySid) {
+			return ((GrantedAuthoritySid) sid).getGrantedAuthority();
+		}
+		return sid.toString();
+	}
+}
@@ -0,0 +1,42 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.model.AccessControlEntry;
+
+/**
+ * Writes audit events to a dedicated logger, which can be routed to its own file by the logging configuration.
+ *
+ * @author Mustafa Ashurex
+ */
+public class LoggingAuditEventSink implements AuditEventSink {
+	public static final String DEFAULT_LOGGER_NAME = "com.ashurex.springcustomacl.audit";
+
+	private final Logger logger;
+
+	public LoggingAuditEventSink() {
+		this(DEFAULT_LOGGER_NAME);
+	}
+
+	public LoggingAuditEventSink(String loggerName) {
+		this.logger = LoggerFactory.getLogger(loggerName);
+	}
+
+	@Override
+	public void write(List<AuditEvent> events) {
+		if (!logger.isInfoEnabled()) {
+			return;
+		}
+
+		for (AuditEvent event : events) {
+			AccessControlEntry ace = event.getAce();
+			logger.info("{} {} {} {} {}",
+						event.getTimestamp(),
+						event.isGranted() ? "GRANTED" : "DENIED",
+						ace.getAcl().getObjectIdentity(),
+						ace.getSid(),
+						ace);
+		}
+	}
+}
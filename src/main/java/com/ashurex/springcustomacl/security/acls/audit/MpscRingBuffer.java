@@ -0,0 +1,82 @@
+package com.ashurex.springcustomacl.security.acls.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, lock-free, multi-producer single-consumer ring buffer. Each slot carries a sequence number that tells
+ * producers whether the slot is free for the current lap and the consumer whether it has been published, so
+ * producers only contend on a single CAS of the tail and never wait on the consumer.
+ *
+ * @author Mustafa Ashurex
+ */
+final class MpscRingBuffer<E> {
+	private final int mask;
+	private final int capacity;
+	private final AtomicReferenceArray<E> slots;
+	private final AtomicLongArray sequences;
+	private final AtomicLong tail = new AtomicLong();
+	// Only read and written by the single consumer.
+	private long head;
+
+	MpscRingBuffer(int requestedCapacity) {
+		if (requestedCapacity < 2) {
+			throw new IllegalArgumentException("Capacity must be at least 2");
+		}
+		this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+		this.mask = capacity - 1;
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			sequences.set(i, i);
+		}
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return {@literal false} if the buffer is full.
+	 */
+	boolean offer(E element) {
+		long pos = tail.get();
+		while (true) {
+			int index = (int) (pos & mask);
+			long delta = sequences.get(index) - pos;
+			if (delta == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots.lazySet(index, element);
+					sequences.lazySet(index, pos + 1);
+					return true;
+				}
+				pos = tail.get();
+			}
+			else if (delta < 0) {
+				return false;
+			}
+			else {
+				pos = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Must only be called from the consumer thread.
+	 *
+	 * @return The next element, or {@literal null} if the buffer is empty.
+	 */
+	E poll() {
+		int index = (int) (head & mask);
+		if (sequences.get(index) != head + 1) {
+			return null;
+		}
+
+		E element = slots.get(index);
+		slots.lazySet(index, null);
+		sequences.lazySet(index, head + capacity);
+		head++;
+		return element;
+	}
+}
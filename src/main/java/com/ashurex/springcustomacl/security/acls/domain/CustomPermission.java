@@ -1,8 +1,11 @@
 package com.ashurex.springcustomacl.security.acls.domain;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.security.acls.domain.AbstractPermission;
 import org.springframework.security.acls.model.Permission;
 
@@ -63,6 +66,16 @@ public class CustomPermission extends AbstractPermission {
 
 	private static final Map<String, Permission> PERMISSION_MAP;
 
+	/**
+	 * Upper bound on the number of composite masks kept by {@link #valueOf(int)}.
+	 */
+	public static final int MAX_INTERNED_COMPOSITES = 4096;
+
+	// Canonical instance of each single bit permission, indexed by bit.
+	private static final Permission[] SINGLE_BITS = new Permission[Integer.SIZE];
+	private static final Permission NONE = new CustomPermission(0);
+	private static final Map<Integer, Permission> COMPOSITES = new ConcurrentHashMap<>();
+
 	static {
 		Map<String, Permission> p = new HashMap<>();
 		p.put("TX_READ", TX_READ);
@@ -96,6 +109,27 @@ public class CustomPermission extends AbstractPermission {
 		p.put("CLIENT_ADMIN", CLIENT_ADMIN);
 
 		PERMISSION_MAP = Collections.unmodifiableMap(p);
+
+		// Use the named constants as the canonical single bit instances, whether or not they are in the map.
+		for (Field field : CustomPermission.class.getFields()) {
+			if (Modifier.isStatic(field.getModifiers()) && Permission.class.isAssignableFrom(field.getType())) {
+				try {
+					Permission permission = (Permission) field.get(null);
+					int mask = permission.getMask();
+					if (Integer.bitCount(mask) == 1) {
+						SINGLE_BITS[Integer.numberOfTrailingZeros(mask)] = permission;
+					}
+				}
+				catch (IllegalAccessException ex) {
+					throw new IllegalStateException(ex);
+				}
+			}
+		}
+		for (int bit = 0; bit < SINGLE_BITS.length; bit++) {
+			if (null == SINGLE_BITS[bit]) {
+				SINGLE_BITS[bit] = new CustomPermission(1 << bit);
+			}
+		}
 	}
 
 	public CustomPermission(int mask) {
@@ -110,6 +144,35 @@ public class CustomPermission extends AbstractPermission {
 		this(Integer.parseInt(mask, 2), code);
 	}
 
+	/**
+	 * @return A canonical, immutable permission for the given mask: the named constant for single bits, and an
+	 * interned instance for composite masks (up to {@link #MAX_INTERNED_COMPOSITES} distinct masks, after which new
+	 * instances are returned).
+	 */
+	public static Permission valueOf(int mask) {
+		if (mask == 0) {
+			return NONE;
+		}
+
+		if ((mask & (mask - 1)) == 0) {
+			return SINGLE_BITS[Integer.numberOfTrailingZeros(mask)];
+		}
+
+		Permission permission = COMPOSITES.get(mask);
+		if (null != permission) {
+			return permission;
+		}
+
+		permission = new CustomPermission(mask);
+		if (COMPOSITES.size() < MAX_INTERNED_COMPOSITES) {
+			Permission existing = COMPOSITES.putIfAbsent(mask, permission);
+			if (null != existing) {
+				return existing;
+			}
+		}
+		return permission;
+	}
+
 	public static Map<String, Permission> getPermissionsMap() {
 		return PERMISSION_MAP;
 	}
@@ -0,0 +1,27 @@
+package com.ashurex.springcustomacl.security.acls.domain;
+
+import org.springframework.security.acls.domain.DefaultPermissionFactory;
+import org.springframework.security.acls.model.Permission;
+
+/**
+ * {@link org.springframework.security.acls.domain.PermissionFactory} for {@link CustomPermission} that returns
+ * canonical instances instead of allocating a permission per call. Single bits map to the named constants and
+ * composite masks come from the bounded cache of {@link CustomPermission#valueOf(int)}, so mapping membership rows
+ * and merging ACE masks does not allocate in steady state.
+ * <p>
+ * Unlike {@link DefaultPermissionFactory}, composite masks are returned as immutable {@link CustomPermission}s
+ * rather than mutable {@link org.springframework.security.acls.domain.CumulativePermission}s, which would not be
+ * safe to share.
+ *
+ * @author Mustafa Ashurex
+ */
+public class CustomPermissionFactory extends DefaultPermissionFactory {
+	public CustomPermissionFactory() {
+		super(CustomPermission.class);
+	}
+
+	@Override
+	public Permission buildFromMask(int mask) {
+		return CustomPermission.valueOf(mask);
+	}
+}
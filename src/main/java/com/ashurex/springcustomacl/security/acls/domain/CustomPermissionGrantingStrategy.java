@@ -1,6 +1,9 @@
 package com.ashurex.springcustomacl.security.acls.domain;
 
 import java.util.List;
+import com.ashurex.springcustomacl.security.acls.model.InheritedPermissionIndex;
+import com.ashurex.springcustomacl.security.acls.model.PartyMembershipAcl;
+import com.ashurex.springcustomacl.security.acls.model.SidPermissionIndex;
 import org.springframework.security.acls.domain.AuditLogger;
 import org.springframework.security.acls.model.AccessControlEntry;
 import org.springframework.security.acls.model.Acl;
@@ -8,6 +11,7 @@ import org.springframework.security.acls.model.NotFoundException;
 import org.springframework.security.acls.model.Permission;
 import org.springframework.security.acls.model.PermissionGrantingStrategy;
 import org.springframework.security.acls.model.Sid;
+import org.springframework.security.acls.model.UnloadedSidException;
 import org.springframework.util.Assert;
 
 /**
@@ -64,11 +68,135 @@ public class CustomPermissionGrantingStrategy implements PermissionGrantingStrat
 	 * @throws NotFoundException if an exact ACE for one of the permission bit masks and
 	 *                           SID combination could not be found
 	 */
+	@Override
 	public boolean isGranted(Acl acl, List<Permission> permission, List<Sid> sids, boolean administrativeMode)
 			throws NotFoundException {
 
-		final List<AccessControlEntry> aces = acl.getEntries();
+		if (acl instanceof PartyMembershipAcl) {
+			return isGranted(((PartyMembershipAcl) acl).getInheritedPermissionIndex(),
+							 permission,
+							 sids,
+							 administrativeMode);
+		}
+
+		final AccessControlEntry firstRejection = findDecidingEntry(acl.getEntries(),
+																	permission,
+																	sids,
+																	administrativeMode);
+
+		if (firstRejection != null && firstRejection.isGranting()) {
+			return true;
+		}
+
+		if (firstRejection != null) {
+			// We found an ACE to reject the request at this point, as no
+			// other ACEs were found that granted a different permission
+			if (!administrativeMode) {
+				auditLogger.logIfNeeded(false, firstRejection);
+			}
+
+			return false;
+		}
+
+		// No matches have been found so far
+		if (acl.isEntriesInheriting() && (acl.getParentAcl() != null)) {
+			// We have a parent, so let them try to find a matching ACE
+			return acl.getParentAcl().isGranted(permission, sids, false);
+		}
+		else {
+			// We either have no parent, or we're the uppermost parent
+			throw new NotFoundException("Unable to locate a matching ACE for passed permissions and SIDs");
+		}
+	}
+
+	/**
+	 * Same decision as walking up the parent ACLs one at a time, made in a single pass over the flattened
+	 * inheritance chain: the nearest level with any matching entry decides, exactly as the recursive check would
+	 * stop at the first parent with a match.
+	 */
+	private boolean isGranted(InheritedPermissionIndex index,
+							  List<Permission> permission,
+							  List<Sid> sids,
+							  boolean administrativeMode) throws NotFoundException {
+		int level = index.findDecidingLevel(permission, sids);
+		int visitedLevels = level < 0 ? index.getDepth() : level + 1;
+
+		// The recursive check verifies every parent it reaches was loaded for the SIDs.
+		for (int i = 1; i < visitedLevels; i++) {
+			if (!index.getAcl(i).isSidLoaded(sids)) {
+				throw new UnloadedSidException("ACL was not loaded for one or more SID");
+			}
+		}
+
+		if (level < 0) {
+			if (null != index.getTail()) {
+				return index.getTail().isGranted(permission, sids, false);
+			}
+			throw new NotFoundException("Unable to locate a matching ACE for passed permissions and SIDs");
+		}
+
+		// Parents are always checked with auditing, as the recursive check passes administrativeMode = false.
+		boolean audit = !administrativeMode || level > 0;
+		AccessControlEntry firstRejection = findDecidingEntry(index.getPermissionIndex(level),
+															  permission,
+															  sids,
+															  !audit);
+
+		if (firstRejection.isGranting()) {
+			return true;
+		}
+
+		if (audit) {
+			auditLogger.logIfNeeded(false, firstRejection);
+		}
+		return false;
+	}
 
+	/**
+	 * Same first-match-wins scan as {@link #findDecidingEntry(List, List, List, boolean)}, using the precomputed
+	 * per-SID masks of the ACL so each permission:sid check is a hash lookup and bitwise AND.
+	 */
+	private AccessControlEntry findDecidingEntry(SidPermissionIndex index,
+												 List<Permission> permission,
+												 List<Sid> sids,
+												 boolean administrativeMode) {
+		AccessControlEntry firstRejection = null;
+
+		for (Permission p : permission) {
+			for (Sid sid : sids) {
+				AccessControlEntry ace = index.findFirstMatch(sid, p.getMask());
+				if (null == ace) {
+					continue;
+				}
+
+				if (ace.isGranting()) {
+					if (!administrativeMode) {
+						auditLogger.logIfNeeded(true, ace);
+					}
+					return ace;
+				}
+
+				if (firstRejection == null) {
+					firstRejection = ace;
+				}
+
+				break; // exit SID for loop (now try next permission)
+			}
+		}
+
+		return firstRejection;
+	}
+
+	/**
+	 * Scan the ACEs for the first match of each permission:sid combination.
+	 *
+	 * @return The (already audited) granting ACE if one was found, otherwise the first rejecting ACE found or
+	 * {@literal null} if no ACE matched at all.
+	 */
+	private AccessControlEntry findDecidingEntry(List<AccessControlEntry> aces,
+												 List<Permission> permission,
+												 List<Sid> sids,
+												 boolean administrativeMode) {
 		AccessControlEntry firstRejection = null;
 
 		for (Permission p : permission) {
@@ -89,7 +217,7 @@ public class CustomPermissionGrantingStrategy implements PermissionGrantingStrat
 								auditLogger.logIfNeeded(true, ace);
 							}
 
-							return true;
+							return ace;
 						}
 
 						// Failure for this permission, so stop search
@@ -112,24 +240,6 @@ public class CustomPermissionGrantingStrategy implements PermissionGrantingStrat
 			}
 		}
 
-		if (firstRejection != null) {
-			// We found an ACE to reject the request at this point, as no
-			// other ACEs were found that granted a different permission
-			if (!administrativeMode) {
-				auditLogger.logIfNeeded(false, firstRejection);
-			}
-
-			return false;
-		}
-
-		// No matches have been found so far
-		if (acl.isEntriesInheriting() && (acl.getParentAcl() != null)) {
-			// We have a parent, so let them try to find a matching ACE
-			return acl.getParentAcl().isGranted(permission, sids, false);
-		}
-		else {
-			// We either have no parent, or we're the uppermost parent
-			throw new NotFoundException("Unable to locate a matching ACE for passed permissions and SIDs");
-		}
+		return firstRejection;
 	}
 }
@@ -3,6 +3,7 @@ package com.ashurex.springcustomacl.security.acls.domain;
 
 import java.beans.Transient;
 import java.io.Serializable;
+import com.ashurex.springcustomacl.security.acls.model.PartyIdentityDictionary;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
 import lombok.Data;
 import org.springframework.security.acls.domain.PrincipalSid;
@@ -38,9 +39,14 @@ public class PartyMembership implements Permission, Serializable {
 		return permission.getPattern();
 	}
 
+	/**
+	 * @return The canonical {@link PrincipalSid} of this membership's user.
+	 *
+	 * @see PartyIdentityDictionary
+	 */
 	@Transient
 	public PrincipalSid getPrincipalSid() {
-		return new PrincipalSid(getUsername());
+		return PartyIdentityDictionary.getPrincipalSid(getUsername());
 	}
 
 	@Override
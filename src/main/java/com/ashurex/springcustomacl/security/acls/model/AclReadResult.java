@@ -0,0 +1,77 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Result of a bulk ACL read that reports missing ACLs instead of throwing a {@link NotFoundException}.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyMembershipAclService#readAvailableAclsById(List, List)
+ */
+public final class AclReadResult {
+	private final Map<ObjectIdentity, Acl> found;
+	private final Set<ObjectIdentity> missing;
+
+	public AclReadResult(Map<ObjectIdentity, Acl> found, Set<ObjectIdentity> missing) {
+		this.found = Collections.unmodifiableMap(found);
+		this.missing = Collections.unmodifiableSet(missing);
+	}
+
+	/**
+	 * Read the ACLs of the given objects with the partial-result read of a {@link PartyMembershipAclService}, or
+	 * with a plain {@link AclService#readAclsById(List, List)} (falling back to one read per object if that throws)
+	 * for any other service.
+	 */
+	public static AclReadResult read(AclService aclService, List<ObjectIdentity> objects, List<Sid> sids) {
+		if (aclService instanceof PartyMembershipAclService) {
+			return ((PartyMembershipAclService) aclService).readAvailableAclsById(objects, sids);
+		}
+
+		try {
+			return new AclReadResult(aclService.readAclsById(objects, sids), Collections.emptySet());
+		}
+		catch (NotFoundException ex) {
+			// Only services without a partial-result read get here.
+		}
+
+		Map<ObjectIdentity, Acl> found = new HashMap<>();
+		Set<ObjectIdentity> missing = new LinkedHashSet<>();
+		for (ObjectIdentity oid : objects) {
+			try {
+				found.put(oid, aclService.readAclById(oid, sids));
+			}
+			catch (NotFoundException ex) {
+				missing.add(oid);
+			}
+		}
+		return new AclReadResult(found, missing);
+	}
+
+	/**
+	 * @return The ACLs that were found, by object identity.
+	 */
+	public Map<ObjectIdentity, Acl> getFound() {
+		return found;
+	}
+
+	/**
+	 * @return The requested object identities no ACL was found for.
+	 */
+	public Set<ObjectIdentity> getMissing() {
+		return missing;
+	}
+
+	public Acl get(ObjectIdentity oid) {
+		return found.get(oid);
+	}
+}
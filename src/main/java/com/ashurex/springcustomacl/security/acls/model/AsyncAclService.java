@@ -0,0 +1,122 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import com.ashurex.springcustomacl.security.acls.RequestScopedAclMemo;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.NotFoundException;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Asynchronous facade of {@link PartyMembershipAclService}, for controllers using {@code DeferredResult} or async
+ * servlet processing to overlap authorization loads with their other I/O.
+ * <p>
+ * ACLs found in the request memo or the ACL cache are returned as already completed futures, without a thread hop.
+ * Anything else is loaded on a dedicated, bounded executor so blocking JDBC calls stay off the caller's thread; when
+ * that executor is saturated the returned future fails with a {@link RejectedExecutionException}.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyMembershipAclService
+ */
+public class AsyncAclService {
+	private final PartyMembershipAclService aclService;
+	private final AclCache aclCache;
+	private final Executor executor;
+
+	public AsyncAclService(PartyMembershipAclService aclService, AclCache aclCache, Executor executor) {
+		this.aclService = aclService;
+		this.aclCache = aclCache;
+		this.executor = executor;
+	}
+
+	/**
+	 * @return The ACL of the given object, or a future failed with a {@link NotFoundException} if it has none.
+	 *
+	 * @see PartyMembershipAclService#readAclById(ObjectIdentity, List)
+	 */
+	public CompletableFuture<Acl> readAclById(ObjectIdentity object, List<Sid> sids) {
+		return readAclsById(Collections.singletonList(object), sids).thenApply(acls -> acls.get(object));
+	}
+
+	/**
+	 * @return The ACLs of the given objects, or a future failed with a {@link NotFoundException} if any of them has
+	 * none.
+	 *
+	 * @see PartyMembershipAclService#readAclsById(List, List)
+	 */
+	public CompletableFuture<Map<ObjectIdentity, Acl>> readAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+		return readAvailableAclsById(objects, sids).thenApply(result -> {
+			if (!result.getMissing().isEmpty()) {
+				ObjectIdentity oid = result.getMissing().iterator().next();
+				throw new NotFoundException("Unable to find ACL information for object identity '" + oid + "'");
+			}
+			return result.getFound();
+		});
+	}
+
+	/**
+	 * @return The ACLs that were found together with the objects that have none.
+	 *
+	 * @see PartyMembershipAclService#readAvailableAclsById(List, List)
+	 */
+	public CompletableFuture<AclReadResult> readAvailableAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+		// The memo is bound to the calling thread's request, so it is resolved before any thread hop.
+		final RequestScopedAclMemo memo = RequestScopedAclMemo.current();
+		final Map<ObjectIdentity, Acl> hits = new HashMap<>();
+		final List<ObjectIdentity> misses = new ArrayList<>();
+
+		for (ObjectIdentity oid : objects) {
+			Acl acl = getCached(oid, sids, memo);
+			if (null != acl) {
+				hits.put(oid, acl);
+			}
+			else if (null != oid) {
+				misses.add(oid);
+			}
+		}
+
+		if (misses.isEmpty()) {
+			return CompletableFuture.completedFuture(new AclReadResult(hits, Collections.emptySet()));
+		}
+
+		try {
+			return CompletableFuture.supplyAsync(() -> {
+				AclReadResult loaded = aclService.readAvailableAclsById(misses, sids);
+				if (null != memo) {
+					loaded.getFound().values().forEach(memo::putAcl);
+				}
+				hits.putAll(loaded.getFound());
+				return new AclReadResult(hits, loaded.getMissing());
+			}, executor);
+		}
+		catch (RejectedExecutionException ex) {
+			CompletableFuture<AclReadResult> rejected = new CompletableFuture<>();
+			rejected.completeExceptionally(ex);
+			return rejected;
+		}
+	}
+
+	private Acl getCached(ObjectIdentity oid, List<Sid> sids, RequestScopedAclMemo memo) {
+		if (null == oid) {
+			return null;
+		}
+
+		if (null != memo) {
+			Acl acl = memo.getAcl(oid, sids);
+			if (null != acl) {
+				return acl;
+			}
+		}
+
+		Acl acl = aclCache.getFromCache(oid);
+		return null != acl && acl.isSidLoaded(sids) ? acl : null;
+	}
+}
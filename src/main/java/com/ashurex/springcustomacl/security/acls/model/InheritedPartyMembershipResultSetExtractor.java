@@ -0,0 +1,41 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.security.acls.domain.PermissionFactory;
+
+/**
+ * Extracts ancestor {@link PartyMembership} entries grouped by the descendant party they were resolved for, using the
+ * {@literal descendant_type} and {@literal descendant_code} columns of each row.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyMembershipResultSetExtractor
+ */
+public class InheritedPartyMembershipResultSetExtractor
+		implements ResultSetExtractor<Map<PartyObjectIdentity, List<PartyMembership>>> {
+	private final PartyMembershipResultSetExtractor membershipExtractor;
+
+	public InheritedPartyMembershipResultSetExtractor(PermissionFactory permissionFactory) {
+		this.membershipExtractor = new PartyMembershipResultSetExtractor(permissionFactory);
+	}
+
+	@Override
+	public Map<PartyObjectIdentity, List<PartyMembership>> extractData(ResultSet rs)
+			throws SQLException, DataAccessException {
+		Map<PartyObjectIdentity, List<PartyMembership>> result = new HashMap<>();
+		while (rs.next()) {
+			PartyObjectIdentity descendant = new PartyObjectIdentity(MembershipPartyType.valueOf(rs.getString(
+					"descendant_type")), rs.getString("descendant_code"));
+			result.computeIfAbsent(descendant, d -> new ArrayList<>()).add(membershipExtractor.mapMembership(rs));
+		}
+		return result;
+	}
+}
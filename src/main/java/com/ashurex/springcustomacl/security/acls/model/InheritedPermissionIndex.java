@@ -0,0 +1,183 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Flattened view of an ACL and the chain of parent ACLs it inherits entries from (e.g. ACCOUNT &rarr; STRATEGY &rarr;
+ * DESK &rarr; FIRM &rarr; CLIENT). The entries of every level are grouped per {@link Sid} in a single map, ordered
+ * by level, so the nearest level with a matching entry is found with one hash lookup per SID instead of re-running
+ * the grant check on each parent.
+ * <p>
+ * The chain follows {@link Acl#isEntriesInheriting()} and stops at the first parent that is not a
+ * {@link PartyMembershipAcl}, which is kept as the {@link #getTail() tail} for the caller to delegate to.
+ *
+ * @author Mustafa Ashurex
+ * @see SidPermissionIndex
+ * @see com.ashurex.springcustomacl.security.acls.domain.CustomPermissionGrantingStrategy
+ */
+public final class InheritedPermissionIndex {
+	private final PartyMembershipAcl[] levels;
+	private final SidPermissionIndex[] levelIndexes;
+	private final Acl tail;
+	private final Map<Sid, FlatEntries> entriesBySid;
+
+	private InheritedPermissionIndex(PartyMembershipAcl[] levels,
+									 SidPermissionIndex[] levelIndexes,
+									 Acl tail,
+									 Map<Sid, FlatEntries> entriesBySid) {
+		this.levels = levels;
+		this.levelIndexes = levelIndexes;
+		this.tail = tail;
+		this.entriesBySid = entriesBySid;
+	}
+
+	public static InheritedPermissionIndex build(PartyMembershipAcl acl) {
+		List<PartyMembershipAcl> chain = new ArrayList<>();
+		Set<Acl> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		Acl tail = null;
+
+		PartyMembershipAcl current = acl;
+		while (null != current && visited.add(current)) {
+			chain.add(current);
+			Acl parent = current.isEntriesInheriting() ? current.getParentAcl() : null;
+			if (parent instanceof PartyMembershipAcl) {
+				current = (PartyMembershipAcl) parent;
+			}
+			else {
+				tail = parent;
+				current = null;
+			}
+		}
+
+		PartyMembershipAcl[] levels = chain.toArray(new PartyMembershipAcl[0]);
+		SidPermissionIndex[] levelIndexes = new SidPermissionIndex[levels.length];
+		Map<Sid, List<AccessControlEntry>> aces = new HashMap<>();
+		Map<Sid, List<Integer>> aceLevels = new HashMap<>();
+
+		for (int level = 0; level < levels.length; level++) {
+			levelIndexes[level] = levels[level].getPermissionIndex();
+			for (AccessControlEntry ace : levels[level].getEntries()) {
+				aces.computeIfAbsent(ace.getSid(), s -> new ArrayList<>(levels.length)).add(ace);
+				aceLevels.computeIfAbsent(ace.getSid(), s -> new ArrayList<>(levels.length)).add(level);
+			}
+		}
+
+		Map<Sid, FlatEntries> entries = new HashMap<>(aces.size() * 2);
+		aces.forEach((sid, sidAces) -> entries.put(sid, new FlatEntries(sidAces, aceLevels.get(sid))));
+		return new InheritedPermissionIndex(levels, levelIndexes, tail, entries);
+	}
+
+	/**
+	 * @return {@literal false} if the entries, parent or inheriting flag of any ACL in the chain changed since this
+	 * index was built.
+	 */
+	public boolean isCurrent() {
+		for (int level = 0; level < levels.length; level++) {
+			PartyMembershipAcl acl = levels[level];
+			if (acl.getPermissionIndex() != levelIndexes[level]) {
+				return false;
+			}
+
+			Acl expectedParent = level + 1 < levels.length ? levels[level + 1] : tail;
+			Acl parent = acl.isEntriesInheriting() ? acl.getParentAcl() : null;
+			if (parent != expectedParent) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Number of {@link PartyMembershipAcl}s in the chain, including the ACL itself.
+	 */
+	public int getDepth() {
+		return levels.length;
+	}
+
+	public PartyMembershipAcl getAcl(int level) {
+		return levels[level];
+	}
+
+	/**
+	 * @return The permission index of the given level.
+	 */
+	public SidPermissionIndex getPermissionIndex(int level) {
+		return levelIndexes[level];
+	}
+
+	/**
+	 * @return The first parent of the chain that could not be flattened, {@literal null} if there is none.
+	 */
+	public Acl getTail() {
+		return tail;
+	}
+
+	/**
+	 * Find the nearest level holding an entry that matches any of the permission:sid combinations, which is the
+	 * level whose entries decide the grant.
+	 *
+	 * @return The deciding level, or {@literal -1} if no level has a matching entry.
+	 */
+	public int findDecidingLevel(List<Permission> permission, List<Sid> sids) {
+		int decidingLevel = -1;
+		for (Sid sid : sids) {
+			FlatEntries e = entriesBySid.get(sid);
+			if (null == e) {
+				continue;
+			}
+
+			for (Permission p : permission) {
+				int level = e.findFirstMatchLevel(p.getMask());
+				if (level == 0) {
+					return 0;
+				}
+				if (level > 0 && (decidingLevel < 0 || level < decidingLevel)) {
+					decidingLevel = level;
+				}
+			}
+		}
+		return decidingLevel;
+	}
+
+	private static final class FlatEntries {
+		private final int[] levels;
+		private final int[] masks;
+		private final int unionMask;
+
+		private FlatEntries(List<AccessControlEntry> sidAces, List<Integer> sidLevels) {
+			this.levels = new int[sidAces.size()];
+			this.masks = new int[sidAces.size()];
+			int union = 0;
+			for (int i = 0; i < masks.length; i++) {
+				levels[i] = sidLevels.get(i);
+				masks[i] = sidAces.get(i).getPermission().getMask();
+				union |= masks[i];
+			}
+			this.unionMask = union;
+		}
+
+		private int findFirstMatchLevel(int requiredMask) {
+			if ((unionMask & requiredMask) != requiredMask) {
+				return -1;
+			}
+
+			// Entries are ordered by level, so the first match is the nearest.
+			for (int i = 0; i < masks.length; i++) {
+				if ((masks[i] & requiredMask) == requiredMask) {
+					return levels[i];
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import lombok.NonNull;
+import org.springframework.security.acls.domain.PrincipalSid;
+
+/**
+ * Process-wide interner of usernames and party codes.
+ * <p>
+ * The ACL model carries the single canonical {@link PrincipalSid} per username and the canonical party code string
+ * instead of a new {@code String}/{@code Sid} per membership row, so cached ACLs share one instance per user and
+ * party. Canonical instances are only weakly referenced, once no cached ACL or identity uses them any more they are
+ * collected along with their entry, so the dictionary never outgrows what the caches hold.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyObjectIdentity
+ */
+public final class PartyIdentityDictionary {
+	private static final WeakInterner<String, PrincipalSid> PRINCIPALS = new WeakInterner<>(PrincipalSid::new);
+	private static final WeakInterner<String, String> PARTY_CODES = new WeakInterner<>(Function.identity());
+
+	private PartyIdentityDictionary() {
+	}
+
+	/**
+	 * @return The canonical {@link PrincipalSid} for the given username.
+	 */
+	public static PrincipalSid getPrincipalSid(@NonNull String username) {
+		return PRINCIPALS.intern(username);
+	}
+
+	/**
+	 * @return The canonical instance of the given party code.
+	 */
+	public static String getPartyCode(@NonNull String partyCode) {
+		return PARTY_CODES.intern(partyCode);
+	}
+
+	/**
+	 * Weak mapping of keys to canonical values. The value created for a key must hold that key instance, so the entry
+	 * lives exactly as long as its value is referenced from outside the interner. Entries are spread over segments
+	 * with their own lock to keep contention between request threads low.
+	 */
+	private static final class WeakInterner<K, V> {
+		private static final int SEGMENTS = 16;
+
+		private final Function<K, V> valueFactory;
+		private final Segment<K, V>[] segments;
+
+		@SuppressWarnings("unchecked")
+		private WeakInterner(Function<K, V> valueFactory) {
+			this.valueFactory = valueFactory;
+			this.segments = new Segment[SEGMENTS];
+			for (int i = 0; i < SEGMENTS; i++) {
+				segments[i] = new Segment<>();
+			}
+		}
+
+		private V intern(K key) {
+			int h = key.hashCode();
+			Segment<K, V> segment = segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+			synchronized (segment) {
+				WeakReference<V> ref = segment.values.get(key);
+				V value = null == ref ? null : ref.get();
+				if (null == value) {
+					value = valueFactory.apply(key);
+					segment.values.put(key, new WeakReference<>(value));
+				}
+				return value;
+			}
+		}
+
+		private static final class Segment<K, V> {
+			private final Map<K, WeakReference<V>> values = new WeakHashMap<>();
+		}
+	}
+}
@@ -1,12 +1,25 @@
 package com.ashurex.springcustomacl.security.acls.model;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import lombok.NonNull;
 import org.springframework.security.acls.domain.AccessControlEntryImpl;
 import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.PrincipalSid;
 import org.springframework.security.acls.model.AccessControlEntry;
 import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
 import org.springframework.security.acls.model.AuditableAcl;
 import org.springframework.security.acls.model.MutableAcl;
 import org.springframework.security.acls.model.NotFoundException;
@@ -24,12 +37,18 @@ import org.springframework.util.Assert;
  */
 public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 	private final List<AccessControlEntry> aces = new ArrayList<>();
+	// Index of the first ACE for each SID within aces, rebuilt whenever entries shift position.
+	private transient Map<Sid, Integer> sidIndex = new HashMap<>();
+	// Precomputed permission masks of the entries, built on first use and dropped whenever the entries change.
+	private transient volatile SidPermissionIndex permissionIndex;
+	private transient volatile InheritedPermissionIndex inheritedPermissionIndex;
 	private transient AclAuthorizationStrategy aclAuthorizationStrategy;
 	private transient PermissionGrantingStrategy permissionGrantingStrategy;
 	private boolean inheriting = false;
 	private PartyObjectIdentity objectIdentity;
 	private String id;
-	private List<Sid> loadedSids;
+	// Hashed so isSidLoaded costs the same regardless of how many SIDs were loaded.
+	private Set<Sid> loadedSids;
 	private Acl parent = null;
 
 	/**
@@ -50,7 +69,7 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 		this.permissionGrantingStrategy = permissionGrantingStrategy;
 		this.objectIdentity = objectIdentity;
 		this.id = id;
-		this.loadedSids = loadedSids;
+		this.loadedSids = toSidSet(loadedSids);
 		this.inheriting = isInheriting;
 	}
 
@@ -74,7 +93,7 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 		this.permissionGrantingStrategy = permissionGrantingStrategy;
 		this.objectIdentity = objectIdentity;
 		this.id = id;
-		this.loadedSids = loadedSids;
+		this.loadedSids = toSidSet(loadedSids);
 		this.inheriting = isInheriting;
 		this.parent = parent;
 	}
@@ -92,6 +111,7 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 																	 auditSuccess,
 																	 auditFailure);
 		aces.set(aceIndex, newEntry);
+		this.permissionIndex = null;
 	}
 
 	@Override
@@ -101,6 +121,8 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 
 		synchronized (aces) {
 			this.aces.remove(aceIndex);
+			rebuildSidIndex();
+			this.permissionIndex = null;
 		}
 	}
 
@@ -124,7 +146,138 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 	}
 
 	public void addAce(AccessControlEntry ace) {
-		this.aces.add(ace);
+		synchronized (aces) {
+			this.aces.add(ace);
+			sidIndex.putIfAbsent(ace.getSid(), aces.size() - 1);
+			this.permissionIndex = null;
+		}
+	}
+
+	/**
+	 * Replace the first entry for the SID of the given ACE, or add it if there is no entry for that SID yet.
+	 *
+	 * @param ace The entry to put in this ACL.
+	 */
+	public void putAce(AccessControlEntry ace) {
+		synchronized (aces) {
+			Integer index = sidIndex.get(ace.getSid());
+			if (null == index) {
+				aces.add(ace);
+				sidIndex.put(ace.getSid(), aces.size() - 1);
+			}
+			else {
+				aces.set(index, ace);
+			}
+			this.permissionIndex = null;
+		}
+	}
+
+	/**
+	 * @return The precomputed permission index of this ACL's current entries.
+	 *
+	 * @see SidPermissionIndex
+	 */
+	public SidPermissionIndex getPermissionIndex() {
+		SidPermissionIndex index = this.permissionIndex;
+		if (null == index) {
+			synchronized (aces) {
+				index = SidPermissionIndex.build(aces);
+				this.permissionIndex = index;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return The flattened permission index of this ACL and the parents it inherits entries from, rebuilt whenever
+	 * any ACL of the chain changed.
+	 *
+	 * @see InheritedPermissionIndex
+	 */
+	public InheritedPermissionIndex getInheritedPermissionIndex() {
+		InheritedPermissionIndex index = this.inheritedPermissionIndex;
+		if (null == index || !index.isCurrent()) {
+			index = InheritedPermissionIndex.build(this);
+			this.inheritedPermissionIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * @param sid The SID to find an entry for.
+	 *
+	 * @return The first entry for the given SID, or {@literal null} if there is none.
+	 */
+	public AccessControlEntry getEntry(Sid sid) {
+		synchronized (aces) {
+			Integer index = sidIndex.get(sid);
+			return null == index ? null : aces.get(index);
+		}
+	}
+
+	private void rebuildSidIndex() {
+		Map<Sid, Integer> index = new HashMap<>();
+		for (int i = 0; i < aces.size(); i++) {
+			index.putIfAbsent(aces.get(i).getSid(), i);
+		}
+		this.sidIndex = index;
+	}
+
+	/**
+	 * Set the transient strategies of this ACL (and its parents) if they are missing, e.g. after being read back from
+	 * the disk tier of the ACL cache.
+	 */
+	void initializeTransientFields(AclAuthorizationStrategy aclAuthorizationStrategy,
+								   PermissionGrantingStrategy permissionGrantingStrategy) {
+		if (null == this.aclAuthorizationStrategy) {
+			this.aclAuthorizationStrategy = aclAuthorizationStrategy;
+		}
+		if (null == this.permissionGrantingStrategy) {
+			this.permissionGrantingStrategy = permissionGrantingStrategy;
+		}
+		if (parent instanceof PartyMembershipAcl) {
+			((PartyMembershipAcl) parent).initializeTransientFields(aclAuthorizationStrategy,
+																	permissionGrantingStrategy);
+		}
+	}
+
+	/**
+	 * Set the parent of a decoded ACL, without the security check of {@link #setParent(Acl)}.
+	 */
+	void initializeParent(Acl parent) {
+		this.parent = parent;
+	}
+
+	// Cached ACLs are serialized with the compact PartyMembershipAclCodec instead of default serialization.
+	private Object writeReplace() throws ObjectStreamException {
+		try {
+			return new SerializedForm(PartyMembershipAclCodec.encode(this));
+		}
+		catch (IOException ex) {
+			throw new InvalidObjectException(ex.getMessage());
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws InvalidObjectException {
+		throw new InvalidObjectException("SerializedForm required");
+	}
+
+	private static final class SerializedForm implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final byte[] data;
+
+		private SerializedForm(byte[] data) {
+			this.data = data;
+		}
+
+		private Object readResolve() throws ObjectStreamException {
+			try {
+				return PartyMembershipAclCodec.decode(data);
+			}
+			catch (IOException ex) {
+				throw new InvalidObjectException(ex.getMessage());
+			}
+		}
 	}
 
 	@Override
@@ -143,6 +296,8 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 
 		synchronized (aces) {
 			this.aces.add(atIndexLocation, ace);
+			rebuildSidIndex();
+			this.permissionIndex = null;
 		}
 	}
 
@@ -169,12 +324,13 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 																	   ace.isAuditSuccess(),
 																	   ace.isAuditFailure());
 			aces.set(aceIndex, newAce);
+			this.permissionIndex = null;
 		}
 	}
 
 	@Override
 	public List<AccessControlEntry> getEntries() {
-		return aces;
+		return Collections.unmodifiableList(aces);
 	}
 
 	@Override
@@ -227,6 +383,70 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 		// throw new UnsupportedOperationException("ACL entry inheritance cannot be set");
 	}
 
+	/**
+	 * @return The SIDs this ACL was loaded for, {@literal null} if it was loaded for all SIDs.
+	 */
+	public Set<Sid> getLoadedSids() {
+		return loadedSids;
+	}
+
+	private static Set<Sid> toSidSet(Collection<Sid> sids) {
+		if (null == sids) {
+			return null;
+		}
+
+		Set<Sid> set = new HashSet<>(sids.size() * 2);
+		for (Sid sid : sids) {
+			// Share the canonical principal instances instead of holding a copy per cached ACL.
+			set.add(sid instanceof PrincipalSid
+					? PartyIdentityDictionary.getPrincipalSid(((PrincipalSid) sid).getPrincipal())
+					: sid);
+		}
+		return Collections.unmodifiableSet(set);
+	}
+
+	/**
+	 * Merge the entries of a partially loaded ACL for the same object into this ACL.
+	 * <p>
+	 * Entries already loaded by this ACL take precedence, only entries for SIDs this ACL was not loaded for are
+	 * copied over. The loaded SIDs of this ACL become the union of both ACLs' loaded SIDs.
+	 *
+	 * @param other A previously loaded ACL for the same {@link ObjectIdentity}.
+	 */
+	public void mergeEntries(@NonNull PartyMembershipAcl other) {
+		Assert.isTrue(objectIdentity.equals(other.getObjectIdentity()), "Cannot merge ACLs of different objects");
+
+		if (null == this.loadedSids) {
+			// Everything is already loaded.
+			return;
+		}
+
+		synchronized (aces) {
+			for (AccessControlEntry e : other.getEntries()) {
+				if (loadedSids.contains(e.getSid())) {
+					continue;
+				}
+				AuditableAccessControlEntry ae = (AuditableAccessControlEntry) e;
+				addAce(new AccessControlEntryImpl(e.getId(),
+												  this,
+												  e.getSid(),
+												  e.getPermission(),
+												  e.isGranting(),
+												  ae.isAuditSuccess(),
+												  ae.isAuditFailure()));
+			}
+		}
+
+		if (null == other.getLoadedSids()) {
+			this.loadedSids = null;
+		}
+		else {
+			Set<Sid> merged = new HashSet<>(loadedSids);
+			merged.addAll(other.getLoadedSids());
+			this.loadedSids = Collections.unmodifiableSet(merged);
+		}
+	}
+
 	@Override
 	public boolean isGranted(@NonNull List<Permission> permission, @NonNull List<Sid> sids, boolean administrativeMode)
 			throws NotFoundException, UnloadedSidException {
@@ -248,20 +468,9 @@ public class PartyMembershipAcl implements Acl, MutableAcl, AuditableAcl {
 			return true;
 		}
 
-		// This ACL applies to a SID subset only. Iterate to check it applies.
+		// This ACL applies to a SID subset only, check each requested SID was loaded.
 		for (Sid sid : sids) {
-			boolean found = false;
-
-			for (Sid loadedSid : loadedSids) {
-				if (sid.equals(loadedSid)) {
-					// this SID is OK
-					found = true;
-
-					break; // out of loadedSids for loop
-				}
-			}
-
-			if (!found) {
+			if (!loadedSids.contains(sid)) {
 				return false;
 			}
 		}
@@ -0,0 +1,46 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.io.Serializable;
+import net.sf.ehcache.Ehcache;
+import org.springframework.security.acls.domain.AclAuthorizationStrategy;
+import org.springframework.security.acls.domain.EhCacheBasedAclCache;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.ObjectIdentity;
+import org.springframework.security.acls.model.PermissionGrantingStrategy;
+
+/**
+ * {@link EhCacheBasedAclCache} that also rewires the transient strategies of {@link PartyMembershipAcl}s read back
+ * from the cache, since the parent class only does so for {@link org.springframework.security.acls.domain.AclImpl}.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyMembershipAclCodec
+ */
+public class PartyMembershipAclCache extends EhCacheBasedAclCache {
+	private final PermissionGrantingStrategy permissionGrantingStrategy;
+	private final AclAuthorizationStrategy aclAuthorizationStrategy;
+
+	public PartyMembershipAclCache(Ehcache cache,
+								   PermissionGrantingStrategy permissionGrantingStrategy,
+								   AclAuthorizationStrategy aclAuthorizationStrategy) {
+		super(cache, permissionGrantingStrategy, aclAuthorizationStrategy);
+		this.permissionGrantingStrategy = permissionGrantingStrategy;
+		this.aclAuthorizationStrategy = aclAuthorizationStrategy;
+	}
+
+	@Override
+	public MutableAcl getFromCache(ObjectIdentity objectIdentity) {
+		return initializeTransientFields(super.getFromCache(objectIdentity));
+	}
+
+	@Override
+	public MutableAcl getFromCache(Serializable pk) {
+		return initializeTransientFields(super.getFromCache(pk));
+	}
+
+	private MutableAcl initializeTransientFields(MutableAcl acl) {
+		if (acl instanceof PartyMembershipAcl) {
+			((PartyMembershipAcl) acl).initializeTransientFields(aclAuthorizationStrategy, permissionGrantingStrategy);
+		}
+		return acl;
+	}
+}
@@ -0,0 +1,348 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.NotSerializableException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.ashurex.springcustomacl.security.acls.domain.CustomPermission;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Acl;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Compact, versioned binary form of a {@link PartyMembershipAcl}, used in place of default Java serialization when
+ * ACLs overflow to the ACL cache's disk tier.
+ * <p>
+ * Layout (version 1): version byte, party type ordinal, party code, ACL id, inheriting flag, a table of the distinct
+ * SIDs referenced by the ACL, the loaded SIDs as table indexes, then per ACE its table index, a flags byte, its id and
+ * its permission mask, and finally the (optional) parent ACL in the same layout. Counts, indexes, ids and masks are
+ * written as variable length integers.
+ * <p>
+ * Version 2 adds the {@link PartyMembership} behind an entry's permission: a flag in the entry's flags byte, followed
+ * by a byte of membership flags (including its inheriting flag) and the membership's non-null fields. Its party is
+ * only written when it isn't the ACL's own party, i.e. for inherited entries. Version 1 data is still read, with
+ * plain {@link CustomPermission}s.
+ * <p>
+ * Decoded ACLs have no {@link org.springframework.security.acls.domain.AclAuthorizationStrategy} or
+ * {@link org.springframework.security.acls.model.PermissionGrantingStrategy}; these are rewired on read by
+ * {@link PartyMembershipAclCache}.
+ *
+ * @author Mustafa Ashurex
+ * @see PartyMembershipAclCache
+ */
+public final class PartyMembershipAclCodec {
+	private static final byte VERSION = 2;
+	private static final byte VERSION_WITHOUT_MEMBERSHIPS = 1;
+
+	private static final byte SID_PRINCIPAL = 0;
+	private static final byte SID_AUTHORITY = 1;
+
+	private static final int FLAG_GRANTING = 1;
+	private static final int FLAG_AUDIT_SUCCESS = 1 << 1;
+	private static final int FLAG_AUDIT_FAILURE = 1 << 2;
+	private static final int FLAG_HAS_ID = 1 << 3;
+	private static final int FLAG_MEMBERSHIP = 1 << 4;
+
+	private static final int MEMBERSHIP_INHERITING = 1;
+	private static final int MEMBERSHIP_ID = 1 << 1;
+	private static final int MEMBERSHIP_OWN_PARTY = 1 << 2;
+	private static final int MEMBERSHIP_OTHER_PARTY = 1 << 3;
+	private static final int MEMBERSHIP_USER_ID = 1 << 4;
+	private static final int MEMBERSHIP_USERNAME = 1 << 5;
+	private static final int MEMBERSHIP_PARTY_ID = 1 << 6;
+	private static final int MEMBERSHIP_PARENT = 1 << 7;
+
+	private PartyMembershipAclCodec() {
+	}
+
+	public static byte[] encode(PartyMembershipAcl acl) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + acl.getEntries().size() * 8);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(VERSION);
+		writeAcl(out, acl);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	public static PartyMembershipAcl decode(byte[] data) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+		byte version = in.readByte();
+		if (version != VERSION && version != VERSION_WITHOUT_MEMBERSHIPS) {
+			throw new InvalidObjectException("Unsupported PartyMembershipAcl encoding version " + version);
+		}
+		return readAcl(in, version);
+	}
+
+	private static void writeAcl(DataOutput out, PartyMembershipAcl acl) throws IOException {
+		PartyObjectIdentity pid = (PartyObjectIdentity) acl.getObjectIdentity();
+		List<AccessControlEntry> aces = acl.getEntries();
+
+		// Intern every referenced SID once, entries and loaded SIDs refer to them by index.
+		Map<Sid, Integer> sidTable = new HashMap<>();
+		List<Sid> sids = new ArrayList<>();
+		if (null != acl.getLoadedSids()) {
+			acl.getLoadedSids().forEach(sid -> intern(sid, sidTable, sids));
+		}
+		aces.forEach(ace -> intern(ace.getSid(), sidTable, sids));
+
+		out.writeByte(pid.getPartyType().ordinal());
+		out.writeUTF(pid.getPartyCode());
+		writeNullableString(out, acl.getId());
+		out.writeBoolean(acl.isEntriesInheriting());
+
+		writeVarInt(out, sids.size());
+		for (Sid sid : sids) {
+			if (sid instanceof PrincipalSid) {
+				out.writeByte(SID_PRINCIPAL);
+				out.writeUTF(((PrincipalSid) sid).getPrincipal());
+			}
+			else if (sid instanceof GrantedAuthoritySid) {
+				out.writeByte(SID_AUTHORITY);
+				out.writeUTF(((GrantedAuthoritySid) sid).getGrantedAuthority());
+			}
+			else {
+				throw new NotSerializableException(sid.getClass().getName());
+			}
+		}
+
+		// 0 means all SIDs were loaded, otherwise count + 1
+		if (null == acl.getLoadedSids()) {
+			writeVarInt(out, 0);
+		}
+		else {
+			writeVarInt(out, acl.getLoadedSids().size() + 1);
+			for (Sid sid : acl.getLoadedSids()) {
+				writeVarInt(out, sidTable.get(sid));
+			}
+		}
+
+		writeVarInt(out, aces.size());
+		for (AccessControlEntry ace : aces) {
+			int flags = ace.isGranting() ? FLAG_GRANTING : 0;
+			if (ace instanceof AuditableAccessControlEntry) {
+				flags |= ((AuditableAccessControlEntry) ace).isAuditSuccess() ? FLAG_AUDIT_SUCCESS : 0;
+				flags |= ((AuditableAccessControlEntry) ace).isAuditFailure() ? FLAG_AUDIT_FAILURE : 0;
+			}
+			if (ace.getId() instanceof Number) {
+				flags |= FLAG_HAS_ID;
+			}
+			if (ace.getPermission() instanceof PartyMembership) {
+				flags |= FLAG_MEMBERSHIP;
+			}
+
+			writeVarInt(out, sidTable.get(ace.getSid()));
+			out.writeByte(flags);
+			if ((flags & FLAG_HAS_ID) != 0) {
+				writeVarLong(out, ((Number) ace.getId()).longValue());
+			}
+			writeVarInt(out, ace.getPermission().getMask());
+			if ((flags & FLAG_MEMBERSHIP) != 0) {
+				writeMembership(out, (PartyMembership) ace.getPermission(), pid);
+			}
+		}
+
+		Acl parent = acl.getParentAcl();
+		if (null == parent) {
+			out.writeBoolean(false);
+		}
+		else if (parent instanceof PartyMembershipAcl) {
+			out.writeBoolean(true);
+			writeAcl(out, (PartyMembershipAcl) parent);
+		}
+		else {
+			throw new NotSerializableException(parent.getClass().getName());
+		}
+	}
+
+	private static void writeMembership(DataOutput out, PartyMembership m, PartyObjectIdentity aclPid)
+			throws IOException {
+		boolean ownParty = m.getPartyType() == aclPid.getPartyType() && aclPid.getPartyCode().equals(m.getPartyCode());
+		boolean otherParty = !ownParty && null != m.getPartyType() && null != m.getPartyCode();
+		int flags = m.isInheriting() ? MEMBERSHIP_INHERITING : 0;
+		flags |= null != m.getId() ? MEMBERSHIP_ID : 0;
+		flags |= ownParty ? MEMBERSHIP_OWN_PARTY : 0;
+		flags |= otherParty ? MEMBERSHIP_OTHER_PARTY : 0;
+		flags |= null != m.getUserId() ? MEMBERSHIP_USER_ID : 0;
+		flags |= null != m.getUsername() ? MEMBERSHIP_USERNAME : 0;
+		flags |= null != m.getPartyId() ? MEMBERSHIP_PARTY_ID : 0;
+		flags |= null != m.getParentIdentity() ? MEMBERSHIP_PARENT : 0;
+
+		out.writeByte(flags);
+		if (null != m.getId()) {
+			writeVarLong(out, m.getId());
+		}
+		if (otherParty) {
+			out.writeByte(m.getPartyType().ordinal());
+			out.writeUTF(m.getPartyCode());
+		}
+		if (null != m.getUserId()) {
+			writeVarLong(out, m.getUserId());
+		}
+		if (null != m.getUsername()) {
+			out.writeUTF(m.getUsername());
+		}
+		if (null != m.getPartyId()) {
+			writeVarLong(out, m.getPartyId());
+		}
+		if (null != m.getParentIdentity()) {
+			out.writeByte(m.getParentIdentity().getPartyType().ordinal());
+			out.writeUTF(m.getParentIdentity().getPartyCode());
+		}
+	}
+
+	private static PartyMembership readMembership(DataInput in, int mask, PartyObjectIdentity aclPid)
+			throws IOException {
+		int flags = in.readUnsignedByte();
+		PartyMembership m = new PartyMembership(CustomPermission.valueOf(mask));
+		m.setInheriting((flags & MEMBERSHIP_INHERITING) != 0);
+		if ((flags & MEMBERSHIP_ID) != 0) {
+			m.setId(readVarLong(in));
+		}
+		if ((flags & MEMBERSHIP_OWN_PARTY) != 0) {
+			m.setPartyType(aclPid.getPartyType());
+			m.setPartyCode(aclPid.getPartyCode());
+		}
+		else if ((flags & MEMBERSHIP_OTHER_PARTY) != 0) {
+			m.setPartyType(MembershipPartyType.values()[in.readUnsignedByte()]);
+			m.setPartyCode(in.readUTF());
+		}
+		if ((flags & MEMBERSHIP_USER_ID) != 0) {
+			m.setUserId(readVarLong(in));
+		}
+		if ((flags & MEMBERSHIP_USERNAME) != 0) {
+			m.setUsername(in.readUTF());
+		}
+		if ((flags & MEMBERSHIP_PARTY_ID) != 0) {
+			m.setPartyId(readVarLong(in));
+		}
+		if ((flags & MEMBERSHIP_PARENT) != 0) {
+			MembershipPartyType parentType = MembershipPartyType.values()[in.readUnsignedByte()];
+			m.setParentIdentity(new PartyObjectIdentity(parentType, in.readUTF()));
+		}
+		return m;
+	}
+
+	private static PartyMembershipAcl readAcl(DataInput in, byte version) throws IOException {
+		MembershipPartyType partyType = MembershipPartyType.values()[in.readUnsignedByte()];
+		PartyObjectIdentity pid = new PartyObjectIdentity(partyType, in.readUTF());
+		String id = readNullableString(in);
+		boolean inheriting = in.readBoolean();
+
+		Sid[] sids = new Sid[readVarInt(in)];
+		for (int i = 0; i < sids.length; i++) {
+			byte kind = in.readByte();
+			String value = in.readUTF();
+			sids[i] = kind == SID_PRINCIPAL ? PartyIdentityDictionary.getPrincipalSid(value)
+											: new GrantedAuthoritySid(value);
+		}
+
+		List<Sid> loadedSids = null;
+		int loadedCount = readVarInt(in);
+		if (loadedCount > 0) {
+			loadedSids = new ArrayList<>(loadedCount - 1);
+			for (int i = 0; i < loadedCount - 1; i++) {
+				loadedSids.add(sids[readVarInt(in)]);
+			}
+		}
+
+		PartyMembershipAcl acl = new PartyMembershipAcl(id, pid, inheriting, null, null, loadedSids);
+
+		int aceCount = readVarInt(in);
+		for (int i = 0; i < aceCount; i++) {
+			Sid sid = sids[readVarInt(in)];
+			int flags = in.readUnsignedByte();
+			Long aceId = (flags & FLAG_HAS_ID) != 0 ? readVarLong(in) : null;
+			int mask = readVarInt(in);
+			Permission permission = (flags & FLAG_MEMBERSHIP) != 0 && version != VERSION_WITHOUT_MEMBERSHIPS
+									? readMembership(in, mask, pid)
+									: CustomPermission.valueOf(mask);
+			acl.addAce(new AccessControlEntryImpl(aceId,
+												  acl,
+												  sid,
+												  permission,
+												  (flags & FLAG_GRANTING) != 0,
+												  (flags & FLAG_AUDIT_SUCCESS) != 0,
+												  (flags & FLAG_AUDIT_FAILURE) != 0));
+		}
+
+		if (in.readBoolean()) {
+			acl.initializeParent(readAcl(in, version));
+		}
+
+		return acl;
+	}
+
+	private static void intern(Sid sid, Map<Sid, Integer> table, List<Sid> sids) {
+		if (!table.containsKey(sid)) {
+			table.put(sid, sids.size());
+			sids.add(sid);
+		}
+	}
+
+	private static void writeNullableString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(null != value);
+		if (null != value) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new InvalidObjectException("Malformed varint");
+	}
+
+	private static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 70; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new InvalidObjectException("Malformed varint");
+	}
+}
@@ -1,27 +1,94 @@
 package com.ashurex.springcustomacl.security.acls.model;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import com.ashurex.springcustomacl.security.PartyHierarchyService;
+import com.ashurex.springcustomacl.security.PartyMembershipLookupStrategy;
+import com.ashurex.springcustomacl.security.UserPermissionService;
+import com.ashurex.springcustomacl.security.acls.RequestScopedAclMemo;
+import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.acls.domain.PrincipalSid;
 import org.springframework.security.acls.jdbc.LookupStrategy;
+import org.springframework.security.acls.model.AccessControlEntry;
 import org.springframework.security.acls.model.Acl;
-import org.springframework.security.acls.model.AclService;
+import org.springframework.security.acls.model.AclCache;
+import org.springframework.security.acls.model.ChildrenExistException;
+import org.springframework.security.acls.model.MutableAcl;
+import org.springframework.security.acls.model.MutableAclService;
 import org.springframework.security.acls.model.NotFoundException;
 import org.springframework.security.acls.model.ObjectIdentity;
 import org.springframework.security.acls.model.Sid;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
 
 /**
+ * {@link MutableAclService} over the party_membership table. The ACL of a party is made up of the memberships of
+ * that party (explicit entries) plus the inheriting memberships of its ancestors (inherited entries), only explicit
+ * entries are ever written.
+ * <p>
+ * Like {@link org.springframework.security.acls.jdbc.JdbcMutableAclService}, the mutating methods must be called
+ * within a transaction. Changes are written with batched statements, and only the ACLs of the affected party and its
+ * descendants, plus the cached memberships of the affected users, are evicted.
+ *
  * @author Mustafa Ashurex
  */
-public class PartyMembershipAclService implements AclService {
-	// TODO: This could implement MutableAclService as well, with some work.
+public class PartyMembershipAclService implements MutableAclService {
+	/**
+	 * Default query for the memberships of parties, the filter on the parties is appended as a WHERE clause.
+	 */
+	public static final String DEFAULT_MEMBERSHIP_SELECT_CLAUSE =
+			"SELECT pm.id, pm.inheriting, pm.permission_mask, u.username FROM party_membership pm "
+			+ "JOIN user u ON u.id = pm.user_id";
+
+	/**
+	 * Default statement for new memberships, bound to the party type, party id, party code, inheriting flag, mask and
+	 * username. It must write no row for an unknown username.
+	 */
+	public static final String DEFAULT_INSERT_MEMBERSHIP_SQL =
+			"INSERT INTO party_membership (party_type, user_id, party_id, party_code, inheriting, permission_mask) "
+			+ "SELECT ?, u.id, ?, ?, ?, ? FROM user u WHERE u.username = ?";
+
+	/**
+	 * Default statement for changed memberships, bound to the mask, inheriting flag and membership id.
+	 */
+	public static final String DEFAULT_UPDATE_MEMBERSHIP_SQL =
+			"UPDATE party_membership SET permission_mask = ?, inheriting = ? WHERE id = ?";
+
+	/**
+	 * Default statement for removed memberships, bound to the membership id.
+	 */
+	public static final String DEFAULT_DELETE_MEMBERSHIP_SQL = "DELETE FROM party_membership WHERE id = ?";
+
+	/**
+	 * Default query for the id of a party, written to the party_id column of new memberships.
+	 */
+	public static final String DEFAULT_PARTY_ID_QUERY = "SELECT id FROM party WHERE party_type = ? AND party_code = ?";
 
 	private final LookupStrategy lookupStrategy;
 	private final JdbcTemplate jdbcTemplate;
 	private final PartyHierarchyService partyHierarchyService;
+	private boolean requestMemoEnabled = true;
+	private AclCache aclCache;
+	private UserPermissionService userPermissionService;
+	private String partyIdQuery = DEFAULT_PARTY_ID_QUERY;
+	private String membershipSelectClause = DEFAULT_MEMBERSHIP_SELECT_CLAUSE;
+	private String insertMembershipSql = DEFAULT_INSERT_MEMBERSHIP_SQL;
+	private String updateMembershipSql = DEFAULT_UPDATE_MEMBERSHIP_SQL;
+	private String deleteMembershipSql = DEFAULT_DELETE_MEMBERSHIP_SQL;
+	private long prefetchWaitMillis = 5000;
+	private int maxInClauseSize = 1000;
 
 	public PartyMembershipAclService(JdbcTemplate jdbcTemplate,
 									 LookupStrategy lookupStrategy,
@@ -31,6 +98,64 @@ public class PartyMembershipAclService implements AclService {
 		this.partyHierarchyService = partyHierarchyService;
 	}
 
+	/**
+	 * @param requestMemoEnabled If {@literal true}, ACLs read during a request are kept in a
+	 *                           {@link RequestScopedAclMemo} and served from it for the rest of that request.
+	 */
+	public void setRequestMemoEnabled(boolean requestMemoEnabled) {
+		this.requestMemoEnabled = requestMemoEnabled;
+	}
+
+	/**
+	 * @param prefetchWaitMillis Maximum time to wait for an asynchronous prefetch of an ACL before loading it on the
+	 *                           calling thread instead.
+	 */
+	public void setPrefetchWaitMillis(long prefetchWaitMillis) {
+		this.prefetchWaitMillis = prefetchWaitMillis;
+	}
+
+	/**
+	 * @param aclCache The ACL cache to evict changed ACLs from.
+	 */
+	public void setAclCache(AclCache aclCache) {
+		this.aclCache = aclCache;
+	}
+
+	/**
+	 * @param userPermissionService Used to evict the cached memberships of users whose memberships changed.
+	 */
+	public void setUserPermissionService(UserPermissionService userPermissionService) {
+		this.userPermissionService = userPermissionService;
+	}
+
+	public void setPartyIdQuery(String partyIdQuery) {
+		this.partyIdQuery = partyIdQuery;
+	}
+
+	public void setMembershipSelectClause(String membershipSelectClause) {
+		this.membershipSelectClause = membershipSelectClause;
+	}
+
+	public void setInsertMembershipSql(String insertMembershipSql) {
+		this.insertMembershipSql = insertMembershipSql;
+	}
+
+	public void setUpdateMembershipSql(String updateMembershipSql) {
+		this.updateMembershipSql = updateMembershipSql;
+	}
+
+	public void setDeleteMembershipSql(String deleteMembershipSql) {
+		this.deleteMembershipSql = deleteMembershipSql;
+	}
+
+	/**
+	 * @param maxInClauseSize Maximum number of parties in any single IN-list, larger lists are split across multiple
+	 *                        queries.
+	 */
+	public void setMaxInClauseSize(int maxInClauseSize) {
+		this.maxInClauseSize = maxInClauseSize;
+	}
+
 	@Override
 	public List<ObjectIdentity> findChildren(ObjectIdentity parentIdentity) {
 		return partyHierarchyService.getPredecessors(parentIdentity)
@@ -39,6 +164,17 @@ public class PartyMembershipAclService implements AclService {
 									.collect(Collectors.toList());
 	}
 
+	/**
+	 * Streaming variant of {@link #findChildren(ObjectIdentity)}, walks the whole subtree below the given identity
+	 * without holding it in memory.
+	 *
+	 * @param parentIdentity The identity to find the children of.
+	 * @param action         Called once for every distinct child identity.
+	 */
+	public void forEachChild(ObjectIdentity parentIdentity, Consumer<? super ObjectIdentity> action) {
+		partyHierarchyService.forEachPredecessor(parentIdentity, action);
+	}
+
 	@Override
 	public Acl readAclById(ObjectIdentity object) throws NotFoundException {
 		return readAclById(object, null);
@@ -65,15 +201,366 @@ public class PartyMembershipAclService implements AclService {
 	@Override
 	public Map<ObjectIdentity, Acl> readAclsById(List<ObjectIdentity> objects, List<Sid> sids)
 			throws NotFoundException {
-		Map<ObjectIdentity, Acl> result = lookupStrategy.readAclsById(objects, sids);
+		AclReadResult result = readAvailableAclsById(objects, sids);
 
 		// Check every requested object identity was found (throw NotFoundException if needed)
+		if (!result.getMissing().isEmpty()) {
+			ObjectIdentity oid = result.getMissing().iterator().next();
+			throw new NotFoundException("Unable to find ACL information for object identity '" + oid + "'");
+		}
+
+		return result.getFound();
+	}
+
+	/**
+	 * Same as {@link #readAclsById(List, List)}, but returns the ACLs that were found together with the identities
+	 * that have none instead of throwing a {@link NotFoundException}, for bulk reads over mixed collections.
+	 *
+	 * @param objects The object identities to read the ACLs of.
+	 * @param sids    If null, _ALL_ ACEs will be loaded, otherwise just for the given SIDs.
+	 *
+	 * @return The found ACLs and the missing object identities.
+	 */
+	public AclReadResult readAvailableAclsById(List<ObjectIdentity> objects, List<Sid> sids) {
+		final RequestScopedAclMemo memo = requestMemoEnabled ? RequestScopedAclMemo.current() : null;
+		final Map<ObjectIdentity, Acl> found;
+
+		if (null == memo) {
+			found = lookupStrategy.readAclsById(objects, sids);
+		}
+		else {
+			found = new HashMap<>();
+			List<ObjectIdentity> misses = new ArrayList<>();
+			for (ObjectIdentity oid : objects) {
+				memo.awaitPending(oid, prefetchWaitMillis);
+				Acl acl = memo.getAcl(oid, sids);
+				if (null != acl) {
+					found.put(acl.getObjectIdentity(), acl);
+				}
+				else {
+					misses.add(oid);
+				}
+			}
+
+			if (!misses.isEmpty()) {
+				Map<ObjectIdentity, Acl> loaded = lookupStrategy.readAclsById(misses, sids);
+				loaded.values().forEach(memo::putAcl);
+				found.putAll(loaded);
+			}
+		}
+
+		Set<ObjectIdentity> missing = new LinkedHashSet<>();
 		for (ObjectIdentity oid : objects) {
-			if (!result.containsKey(oid)) {
-				throw new NotFoundException("Unable to find ACL information for object identity '" + oid + "'");
+			if (!found.containsKey(oid)) {
+				missing.add(oid);
 			}
 		}
 
-		return result;
+		return new AclReadResult(found, missing);
+	}
+
+	/**
+	 * The ACL of a party is implied by the party itself, so this returns its current (possibly empty) ACL with the
+	 * entries of all users loaded, ready to be changed and passed to {@link #updateAcl(MutableAcl)}.
+	 */
+	@Override
+	public MutableAcl createAcl(ObjectIdentity objectIdentity) {
+		Assert.notNull(objectIdentity, "Object Identity required");
+		Assert.isTrue(TransactionSynchronizationManager.isActualTransactionActive(), "Transaction must be running");
+
+		return (MutableAcl) readAclById(objectIdentity);
+	}
+
+	@Override
+	public void deleteAcl(ObjectIdentity objectIdentity, boolean deleteChildren) throws ChildrenExistException {
+		Assert.notNull(objectIdentity, "Object Identity required");
+		Assert.isTrue(TransactionSynchronizationManager.isActualTransactionActive(), "Transaction must be running");
+
+		final PartyObjectIdentity pid = toPartyObjectIdentity(objectIdentity);
+		final List<PartyObjectIdentity> parties = findSubtree(pid);
+		if (!deleteChildren && parties.size() > 1) {
+			throw new ChildrenExistException("Cannot delete '" + pid + "' (has " + (parties.size() - 1) + " children)");
+		}
+
+		final Set<String> usernames = new HashSet<>();
+		final List<Object[]> deletes = new ArrayList<>();
+		for (MembershipRow row : findMemberships(parties)) {
+			usernames.add(row.username);
+			deletes.add(new Object[]{row.id});
+		}
+
+		if (!deletes.isEmpty()) {
+			jdbcTemplate.batchUpdate(deleteMembershipSql, deletes);
+		}
+
+		evict(parties, usernames);
+	}
+
+	/**
+	 * Write the explicit entries of the given ACL to the party_membership table. Entries are matched to the party's
+	 * memberships by id: entries without an id are inserted, entries of the party's memberships are updated if their
+	 * mask changed, and memberships without an entry are deleted. If the ACL was only loaded for some SIDs, only the
+	 * memberships of those SIDs are considered.
+	 * <p>
+	 * Inherited entries change with the membership of the ancestor they are inherited from, so they must be passed
+	 * back unchanged. Replacing one with an entry without an id turns it into an explicit membership of this party.
+	 *
+	 * @throws UnsupportedOperationException If an inherited entry was changed or removed.
+	 * @throws NotFoundException             If an entry is neither a membership of the party nor inherited by it.
+	 */
+	@Override
+	public MutableAcl updateAcl(MutableAcl acl) throws NotFoundException {
+		Assert.notNull(acl, "MutableAcl required");
+		Assert.notNull(acl.getObjectIdentity(), "Object Identity required");
+		Assert.isTrue(acl instanceof PartyMembershipAcl, "Only PartyMembershipAcl instances can be updated");
+		Assert.isTrue(TransactionSynchronizationManager.isActualTransactionActive(), "Transaction must be running");
+
+		final PartyMembershipAcl partyAcl = (PartyMembershipAcl) acl;
+		final PartyObjectIdentity pid = toPartyObjectIdentity(acl.getObjectIdentity());
+		final Set<Sid> loadedSids = partyAcl.getLoadedSids();
+
+		final Map<Long, MembershipRow> rows = new HashMap<>();
+		final Set<String> members = new HashSet<>();
+		for (MembershipRow row : findMemberships(Collections.singletonList(pid))) {
+			members.add(row.username);
+			if (null == loadedSids || loadedSids.contains(new PrincipalSid(row.username))) {
+				rows.put(row.id, row);
+			}
+		}
+
+		final Map<String, Integer> inheritedMasks = findInheritedMasks(pid, members, loadedSids);
+
+		final Set<String> usernames = new HashSet<>();
+		final List<Object[]> inserts = new ArrayList<>();
+		final List<Object[]> updates = new ArrayList<>();
+		final Set<Long> keep = new HashSet<>();
+
+		for (AccessControlEntry ace : acl.getEntries()) {
+			Serializable aceId = ace.getId();
+			if (null == aceId) {
+				String username = getUsername(ace);
+				inserts.add(new Object[]{pid.getPartyType().name(),
+										 null,
+										 pid.getPartyCode(),
+										 isInheriting(ace, false),
+										 ace.getPermission().getMask(),
+										 username});
+				usernames.add(username);
+				continue;
+			}
+
+			MembershipRow row = aceId instanceof Number ? rows.get(((Number) aceId).longValue()) : null;
+			if (null == row) {
+				checkInheritedEntry(pid, ace, inheritedMasks.remove(getUsername(ace)));
+				continue;
+			}
+
+			keep.add(row.id);
+			boolean inheriting = isInheriting(ace, row.inheriting);
+			if (row.mask != ace.getPermission().getMask() || row.inheriting != inheriting) {
+				updates.add(new Object[]{ace.getPermission().getMask(), inheriting, row.id});
+				usernames.add(row.username);
+			}
+		}
+
+		// Inherited entries left over were removed from the ACL, unless an explicit membership replaces them
+		inheritedMasks.keySet().removeAll(usernames);
+		if (!inheritedMasks.isEmpty()) {
+			throw new UnsupportedOperationException("Cannot remove the entries of " + inheritedMasks.keySet() + " from '"
+													+ pid + "', they are inherited from an ancestor's membership");
+		}
+
+		final List<Object[]> deletes = new ArrayList<>();
+		for (MembershipRow row : rows.values()) {
+			if (!keep.contains(row.id)) {
+				deletes.add(new Object[]{row.id});
+				usernames.add(row.username);
+			}
+		}
+
+		if (!deletes.isEmpty()) {
+			jdbcTemplate.batchUpdate(deleteMembershipSql, deletes);
+		}
+		if (!updates.isEmpty()) {
+			int[] counts = jdbcTemplate.batchUpdate(updateMembershipSql, updates);
+			for (int i = 0; i < counts.length; i++) {
+				if (0 == counts[i]) {
+					throw new NotFoundException("Membership " + updates.get(i)[2] + " of '" + pid
+												+ "' no longer exists");
+				}
+			}
+		}
+		if (!inserts.isEmpty()) {
+			Long partyId = findPartyId(pid);
+			inserts.forEach(insert -> insert[1] = partyId);
+			// INSERT ... SELECT writes nothing for an unknown username
+			int[] counts = jdbcTemplate.batchUpdate(insertMembershipSql, inserts);
+			for (int i = 0; i < counts.length; i++) {
+				if (0 == counts[i]) {
+					throw new NotFoundException("Unable to find user '" + inserts.get(i)[5] + "'");
+				}
+			}
+		}
+
+		if (usernames.isEmpty()) {
+			return partyAcl;
+		}
+
+		evict(findSubtree(pid), usernames);
+
+		// Read back without caching, the written rows aren't visible to anyone else until the transaction commits
+		if (!(lookupStrategy instanceof PartyMembershipLookupStrategy)) {
+			return partyAcl;
+		}
+		Acl updated = ((PartyMembershipLookupStrategy) lookupStrategy)
+				.loadAclsById(Collections.singletonList(pid), null == loadedSids ? null : new ArrayList<>(loadedSids))
+				.get(pid);
+		if (null == updated) {
+			throw new NotFoundException("Unable to find ACL information for object identity '" + pid + "'");
+		}
+		return (MutableAcl) updated;
+	}
+
+	/**
+	 * @return The combined masks of the inheriting memberships of the party's ancestors per user, for users without a
+	 * membership of the party itself (those replace the inherited entries) and within the loaded SIDs. The memberships
+	 * of the whole ancestor chain are read with a single query.
+	 */
+	private Map<String, Integer> findInheritedMasks(PartyObjectIdentity pid, Set<String> members, Set<Sid> loadedSids) {
+		final Map<String, Integer> masks = new HashMap<>();
+		for (MembershipRow row : findMemberships(partyHierarchyService.getAncestors(pid))) {
+			if (row.inheriting
+				&& !members.contains(row.username)
+				&& (null == loadedSids || loadedSids.contains(new PrincipalSid(row.username)))) {
+				masks.merge(row.username, row.mask, (a, b) -> a | b);
+			}
+		}
+		return masks;
+	}
+
+	private static void checkInheritedEntry(PartyObjectIdentity pid, AccessControlEntry ace, Integer inheritedMask) {
+		if (null == inheritedMask) {
+			throw new NotFoundException("Entry " + ace.getId() + " is neither a membership of '" + pid
+										+ "' nor inherited by it");
+		}
+		if (inheritedMask != ace.getPermission().getMask()) {
+			throw new UnsupportedOperationException("Cannot change the entry of " + ace.getSid() + " on '" + pid
+													+ "', it is inherited from an ancestor's membership: change the "
+													+ "ancestor's membership or replace it with a new entry instead");
+		}
+	}
+
+	private Long findPartyId(PartyObjectIdentity pid) {
+		List<Long> ids = jdbcTemplate.queryForList(partyIdQuery,
+												   new Object[]{pid.getPartyType().name(), pid.getPartyCode()},
+												   Long.class);
+		if (ids.isEmpty()) {
+			throw new NotFoundException("Unable to find party '" + pid + "'");
+		}
+		return ids.get(0);
+	}
+
+	/**
+	 * @return The inheriting flag of the entry's membership, or the given default if the entry's permission isn't a
+	 * {@link PartyMembership}.
+	 */
+	private static boolean isInheriting(AccessControlEntry ace, boolean defaultInheriting) {
+		return ace.getPermission() instanceof PartyMembership
+			   ? ((PartyMembership) ace.getPermission()).isInheriting()
+			   : defaultInheriting;
+	}
+
+	private static String getUsername(AccessControlEntry ace) {
+		if (!ace.isGranting()) {
+			throw new IllegalArgumentException("Party memberships can only grant permissions: " + ace);
+		}
+		if (!(ace.getSid() instanceof PrincipalSid)) {
+			throw new IllegalArgumentException("Party memberships can only be granted to principals: " + ace);
+		}
+		return ((PrincipalSid) ace.getSid()).getPrincipal();
+	}
+
+	/**
+	 * @return The memberships of the given parties, with one query per {@link #maxInClauseSize} parties.
+	 */
+	private List<MembershipRow> findMemberships(List<PartyObjectIdentity> parties) {
+		if (parties.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<MembershipRow> rows = new ArrayList<>();
+		for (List<PartyObjectIdentity> chunk : PartyMembershipLookupStrategy.chunk(parties, maxInClauseSize)) {
+			final List<Object> params = new ArrayList<>(chunk.size() + 1);
+			final String filter = PartyMembershipLookupStrategy.partyFilter(chunk, "pm", params);
+			rows.addAll(jdbcTemplate.query(membershipSelectClause + " WHERE " + filter,
+										   params.toArray(),
+										   (rs, rowNum) -> new MembershipRow(rs.getLong("id"),
+																			 rs.getBoolean("inheriting"),
+																			 rs.getInt("permission_mask"),
+																			 rs.getString("username"))));
+		}
+		return rows;
+	}
+
+	/**
+	 * @return The party followed by all of its descendants.
+	 */
+	private List<PartyObjectIdentity> findSubtree(PartyObjectIdentity pid) {
+		final List<PartyObjectIdentity> parties = new ArrayList<>();
+		parties.add(pid);
+		forEachChild(pid, child -> parties.add(toPartyObjectIdentity(child)));
+		return parties;
+	}
+
+	/**
+	 * Evict the ACLs of the given parties, a changed party and all of its descendants (which inherit from it), and the
+	 * cached memberships of the given users. The request memo is evicted right away, the shared caches only once the
+	 * transaction commits so other threads can't load and cache rows that may still be rolled back.
+	 */
+	private void evict(List<PartyObjectIdentity> parties, Set<String> usernames) {
+		final RequestScopedAclMemo memo = requestMemoEnabled ? RequestScopedAclMemo.current() : null;
+		if (null != memo) {
+			parties.forEach(memo::evict);
+		}
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					evictShared(parties, usernames);
+				}
+			});
+		}
+		else {
+			evictShared(parties, usernames);
+		}
+	}
+
+	private void evictShared(List<PartyObjectIdentity> parties, Set<String> usernames) {
+		if (null != aclCache) {
+			parties.forEach(aclCache::evictFromCache);
+		}
+
+		if (null != userPermissionService) {
+			usernames.forEach(userPermissionService::refreshPermissions);
+		}
+	}
+
+	private static PartyObjectIdentity toPartyObjectIdentity(ObjectIdentity oid) {
+		return oid instanceof PartyObjectIdentity ? (PartyObjectIdentity) oid : new PartyObjectIdentity(oid);
+	}
+
+	private static final class MembershipRow {
+		private final long id;
+		private final boolean inheriting;
+		private final int mask;
+		private final String username;
+
+		private MembershipRow(long id, boolean inheriting, int mask, String username) {
+			this.id = id;
+			this.inheriting = inheriting;
+			this.mask = mask;
+			this.username = username;
+		}
 	}
 }
@@ -25,34 +25,45 @@ public class PartyMembershipResultSetExtractor implements ResultSetExtractor<Lis
 	public List<PartyMembership> extractData(ResultSet rs) throws SQLException, DataAccessException {
 		LinkedList<PartyMembership> partyMemberships = new LinkedList<>();
 		while (rs.next()) {
-			Long id = rs.getLong("id");
-			MembershipPartyType partyType = MembershipPartyType.valueOf(rs.getString("party_type"));
-			String username = rs.getString("username");
-			Long userId = rs.getLong("user_id");
-			Long partyId = rs.getLong("party_id");
-			String partyCode = rs.getString("party_code");
-			String parentIdentity = rs.getString("parent_identity");
-			String parentPartyType = rs.getString("parent_party_type");
-			boolean isInheriting = rs.getBoolean("inheriting");
-			int mask = rs.getInt("permission_mask");
-			Permission permission = permissionFactory.buildFromMask(mask);
+			partyMemberships.add(mapMembership(rs));
+		}
+		return partyMemberships;
+	}
 
-			PartyMembership p = new PartyMembership(permission);
-			p.setId(id);
-			p.setPartyType(partyType);
-			p.setPartyId(partyId);
-			p.setPartyCode(partyCode);
-			p.setUserId(userId);
-			p.setUsername(username);
-			p.setInheriting(isInheriting);
-			if (null != parentIdentity && null != parentPartyType) {
-				PartyObjectIdentity pid = new PartyObjectIdentity(MembershipPartyType.valueOf(parentPartyType),
-																  parentIdentity);
-				p.setParentIdentity(pid);
-			}
+	/**
+	 * Map the current row of the given {@link ResultSet} to a {@link PartyMembership}.
+	 *
+	 * @param rs A result set positioned on a party membership row.
+	 *
+	 * @return The membership entry of the current row.
+	 */
+	public PartyMembership mapMembership(ResultSet rs) throws SQLException {
+		Long id = rs.getLong("id");
+		MembershipPartyType partyType = MembershipPartyType.valueOf(rs.getString("party_type"));
+		String username = rs.getString("username");
+		Long userId = rs.getLong("user_id");
+		Long partyId = rs.getLong("party_id");
+		String partyCode = rs.getString("party_code");
+		String parentIdentity = rs.getString("parent_identity");
+		String parentPartyType = rs.getString("parent_party_type");
+		boolean isInheriting = rs.getBoolean("inheriting");
+		int mask = rs.getInt("permission_mask");
+		Permission permission = permissionFactory.buildFromMask(mask);
 
-			partyMemberships.add(p);
+		PartyMembership p = new PartyMembership(permission);
+		p.setId(id);
+		p.setPartyType(partyType);
+		p.setPartyId(partyId);
+		p.setPartyCode(partyCode);
+		p.setUserId(userId);
+		p.setUsername(username);
+		p.setInheriting(isInheriting);
+		if (null != parentIdentity && null != parentPartyType) {
+			PartyObjectIdentity pid = new PartyObjectIdentity(MembershipPartyType.valueOf(parentPartyType),
+															  parentIdentity);
+			p.setParentIdentity(pid);
 		}
-		return partyMemberships;
+
+		return p;
 	}
 }
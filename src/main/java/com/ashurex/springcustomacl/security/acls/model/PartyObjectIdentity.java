@@ -1,5 +1,7 @@
 package com.ashurex.springcustomacl.security.acls.model;
 
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
 import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
@@ -8,13 +10,18 @@ import org.springframework.security.acls.model.ObjectIdentity;
 
 /**
  * Implementation of {@link ObjectIdentity} that uses party codes (e.g. shortName) as the identity value.
+ * <p>
+ * The party code is interned through the {@link PartyIdentityDictionary}, so identities of the same party share a
+ * single code instance and usually compare by reference.
  *
  * @author Mustafa Ashurex
  * @see MembershipPartyType
  */
 public class PartyObjectIdentity implements ObjectIdentity {
+	private static final long serialVersionUID = 1L;
 	private final MembershipPartyType partyType;
 	private final String partyCode;
+	private final int hash;
 
 	/**
 	 * Instantiate an identity from a {@link PartyMembership} entry.
@@ -33,7 +40,8 @@ public class PartyObjectIdentity implements ObjectIdentity {
 	 */
 	public PartyObjectIdentity(@NonNull MembershipPartyType partyType, @NonNull String code) {
 		this.partyType = partyType;
-		this.partyCode = code;
+		this.partyCode = PartyIdentityDictionary.getPartyCode(code);
+		this.hash = 31 * partyType.name().hashCode() + code.hashCode();
 	}
 
 	public PartyObjectIdentity(@NonNull ObjectIdentity oid) {
@@ -50,7 +58,7 @@ public class PartyObjectIdentity implements ObjectIdentity {
 
 	@Override
 	public Serializable getIdentifier() {
-		return partyCode;
+		return getPartyCode();
 	}
 
 	@Override
@@ -64,6 +72,11 @@ public class PartyObjectIdentity implements ObjectIdentity {
 			return true;
 		}
 
+		if (o instanceof PartyObjectIdentity) {
+			PartyObjectIdentity that = (PartyObjectIdentity) o;
+			return partyType == that.partyType && partyCode.equals(that.partyCode);
+		}
+
 		if (!(o instanceof ObjectIdentity)) {
 			return false;
 		}
@@ -77,9 +90,7 @@ public class PartyObjectIdentity implements ObjectIdentity {
 
 	@Override
 	public int hashCode() {
-		int result = getType() != null ? getType().hashCode() : 0;
-		result = 31 * result + (getIdentifier() != null ? getIdentifier().hashCode() : 0);
-		return result;
+		return hash;
 	}
 
 
@@ -87,4 +98,28 @@ public class PartyObjectIdentity implements ObjectIdentity {
 	public String toString() {
 		return getType() + ":" + getIdentifier();
 	}
+
+	// Read back through the constructor, so deserialized identities share the canonical party code.
+	private Object writeReplace() {
+		return new SerializedForm(partyType, getPartyCode());
+	}
+
+	private void readObject(ObjectInputStream in) throws InvalidObjectException {
+		throw new InvalidObjectException("SerializedForm required");
+	}
+
+	private static final class SerializedForm implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final MembershipPartyType partyType;
+		private final String partyCode;
+
+		private SerializedForm(MembershipPartyType partyType, String partyCode) {
+			this.partyType = partyType;
+			this.partyCode = partyCode;
+		}
+
+		private Object readResolve() {
+			return new PartyObjectIdentity(partyType, partyCode);
+		}
+	}
 }
@@ -0,0 +1,95 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.Sid;
+
+/**
+ * Immutable, precomputed view of an ACL's entries grouped by {@link Sid}, carrying the OR'ed grant and deny masks of
+ * each SID so most permission checks are a single hash lookup and bitwise AND.
+ * <p>
+ * The entries of each SID keep their ACL order, so first-match-wins lookups give the same result as scanning the
+ * full entry list.
+ *
+ * @author Mustafa Ashurex
+ * @see com.ashurex.springcustomacl.security.acls.domain.CustomPermissionGrantingStrategy
+ */
+public final class SidPermissionIndex {
+	private final Map<Sid, SidEntries> entriesBySid;
+
+	private SidPermissionIndex(Map<Sid, SidEntries> entriesBySid) {
+		this.entriesBySid = entriesBySid;
+	}
+
+	public static SidPermissionIndex build(List<AccessControlEntry> aces) {
+		Map<Sid, List<AccessControlEntry>> grouped = new LinkedHashMap<>();
+		for (AccessControlEntry ace : aces) {
+			grouped.computeIfAbsent(ace.getSid(), s -> new ArrayList<>(1)).add(ace);
+		}
+
+		Map<Sid, SidEntries> entries = new HashMap<>(grouped.size() * 2);
+		grouped.forEach((sid, sidAces) -> entries.put(sid, new SidEntries(sidAces)));
+		return new SidPermissionIndex(entries);
+	}
+
+	/**
+	 * Find the first entry for the given SID whose mask includes every bit of the required mask.
+	 *
+	 * @param sid          The SID to find an entry for.
+	 * @param requiredMask The permission mask being checked.
+	 *
+	 * @return The first matching entry, or {@literal null} if no entry of the SID matches.
+	 */
+	public AccessControlEntry findFirstMatch(Sid sid, int requiredMask) {
+		SidEntries e = entriesBySid.get(sid);
+		return null == e ? null : e.findFirstMatch(requiredMask);
+	}
+
+	private static final class SidEntries {
+		private final AccessControlEntry[] aces;
+		private final int[] masks;
+		private final int grantMask;
+		private final int denyMask;
+
+		private SidEntries(List<AccessControlEntry> sidAces) {
+			this.aces = sidAces.toArray(new AccessControlEntry[0]);
+			this.masks = new int[aces.length];
+			int grant = 0;
+			int deny = 0;
+			for (int i = 0; i < aces.length; i++) {
+				masks[i] = aces[i].getPermission().getMask();
+				if (aces[i].isGranting()) {
+					grant |= masks[i];
+				}
+				else {
+					deny |= masks[i];
+				}
+			}
+			this.grantMask = grant;
+			this.denyMask = deny;
+		}
+
+		private AccessControlEntry findFirstMatch(int requiredMask) {
+			// No single entry can match if the bits aren't even in the union of all entries.
+			if (((grantMask | denyMask) & requiredMask) != requiredMask) {
+				return null;
+			}
+
+			// With one entry the union is its mask, so it matches (the common case of one ACE per user per ACL).
+			if (aces.length == 1) {
+				return aces[0];
+			}
+
+			for (int i = 0; i < aces.length; i++) {
+				if ((masks[i] & requiredMask) == requiredMask) {
+					return aces[i];
+				}
+			}
+			return null;
+		}
+	}
+}
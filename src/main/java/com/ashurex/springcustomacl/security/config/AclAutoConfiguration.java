@@ -3,8 +3,13 @@ package com.ashurex.springcustomacl.security.config;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import com.ashurex.springcustomacl.security.acls.domain.CustomPermission;
+import com.ashurex.springcustomacl.security.acls.audit.AsyncAuditLogger;
+import com.ashurex.springcustomacl.security.acls.audit.AuditEventSink;
+import com.ashurex.springcustomacl.security.acls.audit.JdbcAuditEventSink;
+import com.ashurex.springcustomacl.security.acls.audit.LoggingAuditEventSink;
+import com.ashurex.springcustomacl.security.acls.domain.CustomPermissionFactory;
 import com.ashurex.springcustomacl.security.acls.domain.CustomPermissionGrantingStrategy;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.security.oauth2.OAuth2AutoConfiguration;
@@ -19,14 +24,13 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchyAuthoritiesMapper;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchyImpl;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchyUtils;
 import org.springframework.security.access.vote.RoleHierarchyVoter;
 import org.springframework.security.acls.AclPermissionEvaluator;
-import org.springframework.security.acls.domain.ConsoleAuditLogger;
-import org.springframework.security.acls.domain.DefaultPermissionFactory;
 import org.springframework.security.acls.domain.PermissionFactory;
 import org.springframework.security.acls.model.PermissionGrantingStrategy;
 import org.springframework.security.core.authority.mapping.GrantedAuthoritiesMapper;
@@ -52,14 +56,21 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 		 OAuth2AuthorizationServerConfiguration.class,
 		 OAuth2ResourceServerConfiguration.class,
 		 OAuth2RestOperationsConfiguration.class})
-@EnableConfigurationProperties({OAuth2ClientProperties.class, SecurityJwtConfigProperties.class})
+@EnableConfigurationProperties({OAuth2ClientProperties.class,
+								SecurityJwtConfigProperties.class,
+								AclConfigProperties.class})
 public class AclAutoConfiguration {
 	private final OAuth2ClientProperties credentials;
 	private final SecurityJwtConfigProperties jwtProperties;
 
-	public AclAutoConfiguration(OAuth2ClientProperties credentials, SecurityJwtConfigProperties jwtProperties) {
+	private final AclConfigProperties aclProperties;
+
+	public AclAutoConfiguration(OAuth2ClientProperties credentials,
+								SecurityJwtConfigProperties jwtProperties,
+								AclConfigProperties aclProperties) {
 		this.credentials = credentials;
 		this.jwtProperties = jwtProperties;
+		this.aclProperties = aclProperties;
 	}
 
 	@Bean
@@ -73,16 +84,30 @@ public class AclAutoConfiguration {
 
 	@Bean
 	@Primary
-	public PermissionGrantingStrategy permissionGrantingStrategy() {
+	public PermissionGrantingStrategy permissionGrantingStrategy(AsyncAuditLogger auditLogger) {
 		// Ensure the usage of our custom ACL permission granting strategy.
-		return new CustomPermissionGrantingStrategy(new ConsoleAuditLogger());
+		return new CustomPermissionGrantingStrategy(auditLogger);
+	}
+
+	@Bean
+	public AsyncAuditLogger auditLogger(ObjectProvider<JdbcTemplate> jdbcTemplate) {
+		// Audit entries are buffered and written off the request thread, instead of the synchronous ConsoleAuditLogger.
+		AclConfigProperties.Audit audit = aclProperties.getAudit();
+		AuditEventSink sink = audit.getSink() == AclConfigProperties.Audit.Sink.JDBC
+							  ? new JdbcAuditEventSink(jdbcTemplate.getObject())
+							  : new LoggingAuditEventSink();
+
+		AsyncAuditLogger auditLogger = new AsyncAuditLogger(sink, audit.getBufferSize());
+		auditLogger.setBatchSize(audit.getBatchSize());
+		auditLogger.setOverflowPolicy(audit.getOverflowPolicy());
+		return auditLogger;
 	}
 
 	@Bean
 	@Primary
 	public PermissionFactory permissionFactory() {
-		// Set the permission factory to use our custom Permission class.
-		return new DefaultPermissionFactory(CustomPermission.class);
+		// Set the permission factory to use our custom Permission class, with canonical instances per mask.
+		return new CustomPermissionFactory();
 	}
 
 	@Bean
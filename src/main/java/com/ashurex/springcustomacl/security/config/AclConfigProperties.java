@@ -0,0 +1,324 @@
+package com.ashurex.springcustomacl.security.config;
+
+import com.ashurex.springcustomacl.security.acls.audit.AsyncAuditLogger;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @author Mustafa Ashurex
+ */
+@ConfigurationProperties(prefix = "ashurex.security.acl")
+public class AclConfigProperties {
+	/**
+	 * Maximum number of object identities loaded by a single ACL lookup batch.
+	 */
+	private int batchSize = 100;
+
+	/**
+	 * Number of threads loading ACL lookup batches concurrently, shared by all requests; 1 loads batches sequentially.
+	 */
+	private int batchParallelism = 1;
+
+	/**
+	 * Maximum number of lookup batches waiting for a thread when batch parallelism is enabled, further batches are
+	 * loaded on the calling thread.
+	 */
+	private int batchQueueCapacity = 100;
+
+	/**
+	 * Maximum number of bind parameters in any single SQL IN-list.
+	 */
+	private int maxInClauseSize = 1000;
+
+	/**
+	 * Load inherited ACL entries with a single recursive (CTE) query per batch.
+	 */
+	private boolean recursiveInheritanceQuery = false;
+
+	/**
+	 * Memoize resolved ACLs for the life of each request.
+	 */
+	private boolean requestMemoEnabled = true;
+
+	/**
+	 * Prefetch the ACLs of filtered collections asynchronously, letting each permission check wait only for the
+	 * batch holding its own ACL. Requires the request memo.
+	 */
+	private boolean asyncPrefetch = false;
+
+	/**
+	 * Number of threads loading prefetch batches, shared by all requests.
+	 */
+	private int prefetchThreads = 4;
+
+	/**
+	 * Maximum number of prefetch batches waiting for a thread, further batches are loaded on demand.
+	 */
+	private int prefetchQueueCapacity = 100;
+
+	/**
+	 * Maximum number of batches of a single prefetch loading at the same time.
+	 */
+	private int prefetchConcurrentBatches = 2;
+
+	/**
+	 * Maximum time a permission check waits for an asynchronous prefetch before loading the ACL itself.
+	 */
+	private long prefetchWaitMillis = 5000;
+
+	/**
+	 * Number of threads loading ACLs for the asynchronous ACL service.
+	 */
+	private int asyncThreads = 4;
+
+	/**
+	 * Maximum number of asynchronous ACL loads waiting for a thread, further loads are rejected.
+	 */
+	private int asyncQueueCapacity = 200;
+
+	/**
+	 * Warm up the membership and ACL caches of a user in the background when they authenticate.
+	 */
+	private boolean warmupEnabled = true;
+
+	/**
+	 * Minimum number of seconds between two warm-ups of the same user.
+	 */
+	private long warmupIntervalSeconds = 300;
+
+	/**
+	 * Maximum number of ACLs loaded by a single warm-up.
+	 */
+	private int warmupMaxObjects = 5000;
+
+	/**
+	 * Maximum number of warm-ups waiting for the warm-up thread, further warm-ups are skipped.
+	 */
+	private int warmupQueueCapacity = 100;
+
+	/**
+	 * Seconds between two polls for party hierarchy changes, polling is disabled when zero.
+	 */
+	private long hierarchyRefreshSeconds = 5;
+
+	/**
+	 * How far below the highest party hierarchy version seen each poll starts, in units of the version column.
+	 */
+	private long hierarchyVersionOverlap = 1000;
+
+	private final Audit audit = new Audit();
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchParallelism() {
+		return batchParallelism;
+	}
+
+	public void setBatchParallelism(int batchParallelism) {
+		this.batchParallelism = batchParallelism;
+	}
+
+	public int getBatchQueueCapacity() {
+		return batchQueueCapacity;
+	}
+
+	public void setBatchQueueCapacity(int batchQueueCapacity) {
+		this.batchQueueCapacity = batchQueueCapacity;
+	}
+
+	public int getMaxInClauseSize() {
+		return maxInClauseSize;
+	}
+
+	public void setMaxInClauseSize(int maxInClauseSize) {
+		this.maxInClauseSize = maxInClauseSize;
+	}
+
+	public boolean isRecursiveInheritanceQuery() {
+		return recursiveInheritanceQuery;
+	}
+
+	public void setRecursiveInheritanceQuery(boolean recursiveInheritanceQuery) {
+		this.recursiveInheritanceQuery = recursiveInheritanceQuery;
+	}
+
+	public boolean isRequestMemoEnabled() {
+		return requestMemoEnabled;
+	}
+
+	public void setRequestMemoEnabled(boolean requestMemoEnabled) {
+		this.requestMemoEnabled = requestMemoEnabled;
+	}
+
+	public boolean isAsyncPrefetch() {
+		return asyncPrefetch;
+	}
+
+	public void setAsyncPrefetch(boolean asyncPrefetch) {
+		this.asyncPrefetch = asyncPrefetch;
+	}
+
+	public int getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
+	public int getPrefetchQueueCapacity() {
+		return prefetchQueueCapacity;
+	}
+
+	public void setPrefetchQueueCapacity(int prefetchQueueCapacity) {
+		this.prefetchQueueCapacity = prefetchQueueCapacity;
+	}
+
+	public int getPrefetchConcurrentBatches() {
+		return prefetchConcurrentBatches;
+	}
+
+	public void setPrefetchConcurrentBatches(int prefetchConcurrentBatches) {
+		this.prefetchConcurrentBatches = prefetchConcurrentBatches;
+	}
+
+	public long getPrefetchWaitMillis() {
+		return prefetchWaitMillis;
+	}
+
+	public void setPrefetchWaitMillis(long prefetchWaitMillis) {
+		this.prefetchWaitMillis = prefetchWaitMillis;
+	}
+
+	public int getAsyncThreads() {
+		return asyncThreads;
+	}
+
+	public void setAsyncThreads(int asyncThreads) {
+		this.asyncThreads = asyncThreads;
+	}
+
+	public int getAsyncQueueCapacity() {
+		return asyncQueueCapacity;
+	}
+
+	public void setAsyncQueueCapacity(int asyncQueueCapacity) {
+		this.asyncQueueCapacity = asyncQueueCapacity;
+	}
+
+	public boolean isWarmupEnabled() {
+		return warmupEnabled;
+	}
+
+	public void setWarmupEnabled(boolean warmupEnabled) {
+		this.warmupEnabled = warmupEnabled;
+	}
+
+	public long getWarmupIntervalSeconds() {
+		return warmupIntervalSeconds;
+	}
+
+	public void setWarmupIntervalSeconds(long warmupIntervalSeconds) {
+		this.warmupIntervalSeconds = warmupIntervalSeconds;
+	}
+
+	public int getWarmupMaxObjects() {
+		return warmupMaxObjects;
+	}
+
+	public void setWarmupMaxObjects(int warmupMaxObjects) {
+		this.warmupMaxObjects = warmupMaxObjects;
+	}
+
+	public int getWarmupQueueCapacity() {
+		return warmupQueueCapacity;
+	}
+
+	public void setWarmupQueueCapacity(int warmupQueueCapacity) {
+		this.warmupQueueCapacity = warmupQueueCapacity;
+	}
+
+	public long getHierarchyRefreshSeconds() {
+		return hierarchyRefreshSeconds;
+	}
+
+	public void setHierarchyRefreshSeconds(long hierarchyRefreshSeconds) {
+		this.hierarchyRefreshSeconds = hierarchyRefreshSeconds;
+	}
+
+	public long getHierarchyVersionOverlap() {
+		return hierarchyVersionOverlap;
+	}
+
+	public void setHierarchyVersionOverlap(long hierarchyVersionOverlap) {
+		this.hierarchyVersionOverlap = hierarchyVersionOverlap;
+	}
+
+	public Audit getAudit() {
+		return audit;
+	}
+
+	public static class Audit {
+		public enum Sink {
+			LOG,
+			JDBC
+		}
+
+		/**
+		 * Where audited grant decisions are written.
+		 */
+		private Sink sink = Sink.LOG;
+
+		/**
+		 * Capacity of the audit ring buffer, rounded up to a power of two.
+		 */
+		private int bufferSize = 8192;
+
+		/**
+		 * Maximum number of audit events written to the sink at once.
+		 */
+		private int batchSize = 256;
+
+		/**
+		 * What to do with an audit event when the ring buffer is full.
+		 */
+		private AsyncAuditLogger.OverflowPolicy overflowPolicy = AsyncAuditLogger.OverflowPolicy.DROP;
+
+		public Sink getSink() {
+			return sink;
+		}
+
+		public void setSink(Sink sink) {
+			this.sink = sink;
+		}
+
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+
+		public int getBatchSize() {
+			return batchSize;
+		}
+
+		public void setBatchSize(int batchSize) {
+			this.batchSize = batchSize;
+		}
+
+		public AsyncAuditLogger.OverflowPolicy getOverflowPolicy() {
+			return overflowPolicy;
+		}
+
+		public void setOverflowPolicy(AsyncAuditLogger.OverflowPolicy overflowPolicy) {
+			this.overflowPolicy = overflowPolicy;
+		}
+	}
+}
@@ -1,27 +1,39 @@
 package com.ashurex.springcustomacl.security.config;
 
+import java.util.concurrent.TimeUnit;
 import javax.sql.DataSource;
+import com.ashurex.springcustomacl.security.CustomUserPermissionService;
 import com.ashurex.springcustomacl.security.JdbcPartyHierarchyService;
 import com.ashurex.springcustomacl.security.PartyHierarchyService;
 import com.ashurex.springcustomacl.security.PartyMembershipLookupStrategy;
+import com.ashurex.springcustomacl.security.PermissionWarmupListener;
+import com.ashurex.springcustomacl.security.UserPermissionService;
+import com.ashurex.springcustomacl.security.acls.PartyBulkPermissionEvaluator;
 import com.ashurex.springcustomacl.security.acls.PartyPermissionCacheOptimizer;
+import com.ashurex.springcustomacl.security.acls.PartyPermissionEvaluator;
+import com.ashurex.springcustomacl.security.acls.model.AsyncAclService;
+import com.ashurex.springcustomacl.security.acls.model.PartyMembershipAclCache;
 import com.ashurex.springcustomacl.security.acls.model.PartyMembershipAclService;
 import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentityRetrievalStrategy;
 import net.sf.ehcache.config.PersistenceConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.ehcache.EhCacheFactoryBean;
 import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
 import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.access.hierarchicalroles.RoleHierarchy;
-import org.springframework.security.acls.AclPermissionEvaluator;
 import org.springframework.security.acls.domain.AclAuthorizationStrategy;
 import org.springframework.security.acls.domain.AclAuthorizationStrategyImpl;
-import org.springframework.security.acls.domain.EhCacheBasedAclCache;
 import org.springframework.security.acls.domain.PermissionFactory;
 import org.springframework.security.acls.jdbc.LookupStrategy;
 import org.springframework.security.acls.model.AclCache;
@@ -49,11 +61,12 @@ public class AclConfiguration extends GlobalMethodSecurityConfiguration {
 	}
 
 	@Bean
-	public EhCacheBasedAclCache aclCache(PermissionGrantingStrategy permissionGrantingStrategy) {
+	public PartyMembershipAclCache aclCache(PermissionGrantingStrategy permissionGrantingStrategy) {
 		// Spring ACL requires an ACL cache, and EhCache is the 'most supported' method.
-		return new EhCacheBasedAclCache(aclEhCacheFactoryBean().getObject(),
-										permissionGrantingStrategy,
-										aclAuthorizationStrategy());
+		// Our cache also rewires the strategies of PartyMembershipAcls read back from the disk tier.
+		return new PartyMembershipAclCache(aclEhCacheFactoryBean().getObject(),
+										   permissionGrantingStrategy,
+										   aclAuthorizationStrategy());
 	}
 
 	@Bean
@@ -104,22 +117,84 @@ public class AclConfiguration extends GlobalMethodSecurityConfiguration {
 	@Bean
 	@Primary
 	public MethodSecurityExpressionHandler defaultMethodSecurityExpressionHandler(AclService aclService,
+																				  AclCache aclCache,
 																				  PermissionFactory permissionFactory,
 																				  RoleHierarchy roleHierarchy,
 																				  ObjectIdentityRetrievalStrategy retrievalStrategy,
-																				  ObjectIdentityGenerator objectIdentityGenerator) {
+																				  ObjectIdentityGenerator objectIdentityGenerator,
+																				  AclConfigProperties aclProperties) {
 		DefaultMethodSecurityExpressionHandler expressionHandler = new DefaultMethodSecurityExpressionHandler();
-		AclPermissionEvaluator permissionEvaluator = new AclPermissionEvaluator(aclService);
+		PartyPermissionEvaluator permissionEvaluator = new PartyPermissionEvaluator(aclService);
 		permissionEvaluator.setObjectIdentityGenerator(objectIdentityGenerator);
 		permissionEvaluator.setObjectIdentityRetrievalStrategy(retrievalStrategy);
 		permissionEvaluator.setPermissionFactory(permissionFactory);
 		expressionHandler.setPermissionEvaluator(permissionEvaluator);
-		expressionHandler.setPermissionCacheOptimizer(new PartyPermissionCacheOptimizer(aclService, retrievalStrategy));
+		expressionHandler.setPermissionCacheOptimizer(permissionCacheOptimizer(aclService,
+																			   aclCache,
+																			   retrievalStrategy,
+																			   aclProperties));
 		expressionHandler.setRoleHierarchy(roleHierarchy);
+		// Compile the parsed security expressions to bytecode after their first evaluations.
+		expressionHandler.setExpressionParser(new SpelExpressionParser(
+				new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader())));
 
 		return expressionHandler;
 	}
 
+	private PartyPermissionCacheOptimizer permissionCacheOptimizer(AclService aclService,
+																   AclCache aclCache,
+																   ObjectIdentityRetrievalStrategy retrievalStrategy,
+																   AclConfigProperties aclProperties) {
+		PartyPermissionCacheOptimizer optimizer = new PartyPermissionCacheOptimizer(aclService, retrievalStrategy);
+		optimizer.setAclCache(aclCache);
+		// Chunks match the lookup strategy's batches, so each chunk is a single lookup batch.
+		optimizer.setBatchSize(aclProperties.getBatchSize());
+		optimizer.setMaxConcurrentBatches(aclProperties.getPrefetchConcurrentBatches());
+		// Prefetched ACLs are handed to permission checks through the request memo.
+		if (aclProperties.isAsyncPrefetch() && aclProperties.isRequestMemoEnabled()) {
+			optimizer.setAsyncExecutor(aclPrefetchExecutor(aclProperties));
+		}
+		return optimizer;
+	}
+
+	@Bean
+	@ConditionalOnExpression("${ashurex.security.acl.batch-parallelism:1} > 1")
+	public ThreadPoolTaskExecutor aclLookupExecutor(AclConfigProperties aclProperties) {
+		// Shared by all lookups, batches it rejects are loaded on the calling thread.
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(aclProperties.getBatchParallelism());
+		executor.setMaxPoolSize(aclProperties.getBatchParallelism());
+		executor.setQueueCapacity(aclProperties.getBatchQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setDaemon(true);
+		executor.setThreadNamePrefix("acl-lookup-");
+		return executor;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "ashurex.security.acl", name = "async-prefetch", havingValue = "true")
+	public ThreadPoolTaskExecutor aclPrefetchExecutor(AclConfigProperties aclProperties) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(aclProperties.getPrefetchThreads());
+		executor.setMaxPoolSize(aclProperties.getPrefetchThreads());
+		executor.setQueueCapacity(aclProperties.getPrefetchQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setDaemon(true);
+		executor.setThreadNamePrefix("acl-prefetch-");
+		return executor;
+	}
+
+	@Bean
+	public PartyBulkPermissionEvaluator bulkPermissionEvaluator(AclService aclService,
+																PermissionFactory permissionFactory,
+																ObjectIdentityRetrievalStrategy retrievalStrategy) {
+		// Row-level permission checks of whole listings, see PartyBulkPermissionEvaluator.
+		PartyBulkPermissionEvaluator bulkEvaluator = new PartyBulkPermissionEvaluator(aclService);
+		bulkEvaluator.setObjectIdentityRetrievalStrategy(retrievalStrategy);
+		bulkEvaluator.setPermissionFactory(permissionFactory);
+		return bulkEvaluator;
+	}
+
 	@Bean
 	@Primary
 	public PartyMembershipLookupStrategy lookupStrategy(AclCache aclCache,
@@ -127,22 +202,94 @@ public class AclConfiguration extends GlobalMethodSecurityConfiguration {
 														PartyHierarchyService partyHierarchyService,
 														AclAuthorizationStrategy aclAuthorizationStrategy,
 														PermissionGrantingStrategy permissionGrantingStrategy,
-														PermissionFactory permissionFactory) {
-		return new PartyMembershipLookupStrategy(dataSource,
-												 pidRetriever,
-												 partyHierarchyService,
-												 permissionFactory,
-												 aclCache,
-												 aclAuthorizationStrategy,
-												 permissionGrantingStrategy);
+														PermissionFactory permissionFactory,
+														AclConfigProperties aclProperties) {
+		PartyMembershipLookupStrategy lookupStrategy = new PartyMembershipLookupStrategy(dataSource,
+																						 pidRetriever,
+																						 partyHierarchyService,
+																						 permissionFactory,
+																						 aclCache,
+																						 aclAuthorizationStrategy,
+																						 permissionGrantingStrategy);
+		lookupStrategy.setBatchSize(aclProperties.getBatchSize());
+		if (aclProperties.getBatchParallelism() > 1) {
+			lookupStrategy.setBatchExecutor(aclLookupExecutor(aclProperties));
+		}
+		lookupStrategy.setMaxInClauseSize(aclProperties.getMaxInClauseSize());
+		lookupStrategy.setRecursiveInheritanceQuery(aclProperties.isRecursiveInheritanceQuery());
+		return lookupStrategy;
 	}
 
 	@Bean
 	@Primary
 	public PartyMembershipAclService aclService(JdbcTemplate jdbcTemplate,
 												LookupStrategy lookupStrategy,
-												PartyHierarchyService partyHierarchyService) {
-		return new PartyMembershipAclService(jdbcTemplate, lookupStrategy, partyHierarchyService);
+												PartyHierarchyService partyHierarchyService,
+												AclCache aclCache,
+												UserPermissionService userPermissionService,
+												AclConfigProperties aclProperties) {
+		PartyMembershipAclService aclService = new PartyMembershipAclService(jdbcTemplate,
+																			 lookupStrategy,
+																			 partyHierarchyService);
+		aclService.setRequestMemoEnabled(aclProperties.isRequestMemoEnabled());
+		aclService.setPrefetchWaitMillis(aclProperties.getPrefetchWaitMillis());
+		aclService.setMaxInClauseSize(aclProperties.getMaxInClauseSize());
+		// Changes through the MutableAclService evict the affected ACLs and user memberships.
+		aclService.setAclCache(aclCache);
+		aclService.setUserPermissionService(userPermissionService);
+		return aclService;
+	}
+
+	@Bean
+	public AsyncAclService asyncAclService(PartyMembershipAclService aclService,
+										   AclCache aclCache,
+										   AclConfigProperties aclProperties) {
+		return new AsyncAclService(aclService, aclCache, aclJdbcExecutor(aclProperties));
+	}
+
+	@Bean
+	public ThreadPoolTaskExecutor aclJdbcExecutor(AclConfigProperties aclProperties) {
+		// Bounded, so asynchronous ACL loads can't take more than their share of the connection pool.
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(aclProperties.getAsyncThreads());
+		executor.setMaxPoolSize(aclProperties.getAsyncThreads());
+		executor.setQueueCapacity(aclProperties.getAsyncQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setDaemon(true);
+		executor.setThreadNamePrefix("acl-jdbc-");
+		return executor;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "ashurex.security.acl", name = "warmup-enabled", matchIfMissing = true)
+	public PermissionWarmupListener permissionWarmupListener(CustomUserPermissionService userPermissionService,
+															 PartyHierarchyService partyHierarchyService,
+															 AclService aclService,
+															 AclCache aclCache,
+															 AclConfigProperties aclProperties) {
+		PermissionWarmupListener listener = new PermissionWarmupListener(userPermissionService,
+																		 partyHierarchyService,
+																		 aclService,
+																		 aclCache,
+																		 aclWarmupExecutor(aclProperties));
+		listener.setBatchSize(aclProperties.getBatchSize());
+		listener.setMaxObjects(aclProperties.getWarmupMaxObjects());
+		listener.setMinWarmupIntervalMillis(TimeUnit.SECONDS.toMillis(aclProperties.getWarmupIntervalSeconds()));
+		return listener;
+	}
+
+	@Bean
+	@ConditionalOnProperty(prefix = "ashurex.security.acl", name = "warmup-enabled", matchIfMissing = true)
+	public ThreadPoolTaskExecutor aclWarmupExecutor(AclConfigProperties aclProperties) {
+		// A single thread, so warm-ups never compete with requests for more than one connection.
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(1);
+		executor.setMaxPoolSize(1);
+		executor.setQueueCapacity(aclProperties.getWarmupQueueCapacity());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setDaemon(true);
+		executor.setThreadNamePrefix("acl-warmup-");
+		return executor;
 	}
 
 	@Bean
@@ -154,7 +301,13 @@ public class AclConfiguration extends GlobalMethodSecurityConfiguration {
 	@Bean
 	@Primary
 	public PartyHierarchyService partyHierarchyService(JdbcTemplate jdbcTemplate,
-													   PartyObjectIdentityRetrievalStrategy pidRetriever) {
-		return new JdbcPartyHierarchyService(jdbcTemplate, pidRetriever);
+													   PartyObjectIdentityRetrievalStrategy pidRetriever,
+													   AclCache aclCache,
+													   AclConfigProperties aclProperties) {
+		JdbcPartyHierarchyService hierarchyService = new JdbcPartyHierarchyService(jdbcTemplate, pidRetriever);
+		hierarchyService.setAclCache(aclCache);
+		hierarchyService.setRefreshIntervalMillis(TimeUnit.SECONDS.toMillis(aclProperties.getHierarchyRefreshSeconds()));
+		hierarchyService.setVersionOverlap(aclProperties.getHierarchyVersionOverlap());
+		return hierarchyService;
 	}
 }
@@ -1,7 +1,9 @@
 package com.ashurex.springcustomacl.security.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.DefaultAuthenticationEventPublisher;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableResourceServer;
@@ -25,11 +27,15 @@ import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
 public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
 	private final ResourceServerTokenServices tokenServices;
 	private final JwtTokenStore jwtTokenStore;
+	private final ApplicationEventPublisher eventPublisher;
 
 	@Autowired
-	public ResourceServerConfig(ResourceServerTokenServices tokenServices, JwtTokenStore jwtTokenStore) {
+	public ResourceServerConfig(ResourceServerTokenServices tokenServices,
+								JwtTokenStore jwtTokenStore,
+								ApplicationEventPublisher eventPublisher) {
 		this.tokenServices = tokenServices;
 		this.jwtTokenStore = jwtTokenStore;
+		this.eventPublisher = eventPublisher;
 	}
 
 	@Override
@@ -51,8 +57,10 @@ public class ResourceServerConfig extends ResourceServerConfigurerAdapter {
 
 	@Override
 	public void configure(ResourceServerSecurityConfigurer resources) throws Exception {
+		// Publish authentication events for token requests as well, they trigger the permission warm-up.
 		resources.tokenServices(tokenServices)
 				 .tokenStore(jwtTokenStore)
+				 .eventPublisher(new DefaultAuthenticationEventPublisher(eventPublisher))
 				 .stateless(true);
 	}
 }
@@ -0,0 +1,206 @@
+package com.ashurex.springcustomacl.security;
+
+import java.util.Arrays;
+import java.util.Collections;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
+import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentityRetrievalStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.acls.model.AclCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Tests of the incremental refresh of {@link JdbcPartyHierarchyService} against an embedded party_hierarchy table.
+ *
+ * @author Mustafa Ashurex
+ */
+public class JdbcPartyHierarchyServiceTest {
+	private static final String INSERT_SQL =
+			"INSERT INTO party_hierarchy (party_type, party_code, parent_party_type, parent_code, version) " +
+			"VALUES (?, ?, ?, ?, ?)";
+	private static final String MOVE_SQL =
+			"UPDATE party_hierarchy SET parent_party_type = ?, parent_code = ?, version = ? " +
+			"WHERE party_type = ? AND party_code = ?";
+	private static final String DELETE_SQL =
+			"UPDATE party_hierarchy SET deleted = 1, version = ? WHERE party_type = ? AND party_code = ?";
+
+	private static final PartyObjectIdentity CLIENT = new PartyObjectIdentity(MembershipPartyType.CLIENT, "C1");
+	private static final PartyObjectIdentity FIRM_1 = new PartyObjectIdentity(MembershipPartyType.FIRM, "F1");
+	private static final PartyObjectIdentity FIRM_2 = new PartyObjectIdentity(MembershipPartyType.FIRM, "F2");
+	private static final PartyObjectIdentity DESK_1 = new PartyObjectIdentity(MembershipPartyType.DESK, "D1");
+	private static final PartyObjectIdentity DESK_2 = new PartyObjectIdentity(MembershipPartyType.DESK, "D2");
+	private static final PartyObjectIdentity STRATEGY = new PartyObjectIdentity(MembershipPartyType.STRATEGY, "S1");
+	private static final PartyObjectIdentity ACCOUNT = new PartyObjectIdentity(MembershipPartyType.ACCOUNT, "A1");
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private AclCache aclCache;
+	private JdbcPartyHierarchyService service;
+
+	@Before
+	public void setUp() throws Exception {
+		database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE party_hierarchy (" +
+							 "party_type VARCHAR(16) NOT NULL, party_code VARCHAR(64) NOT NULL, " +
+							 "parent_party_type VARCHAR(16), parent_code VARCHAR(64), " +
+							 "version BIGINT NOT NULL, deleted TINYINT NOT NULL DEFAULT 0)");
+		insert(CLIENT, null, 1);
+		insert(FIRM_1, CLIENT, 2);
+		insert(FIRM_2, CLIENT, 3);
+		insert(DESK_1, FIRM_1, 4);
+		insert(DESK_2, FIRM_1, 5);
+		insert(STRATEGY, DESK_1, 6);
+		insert(ACCOUNT, STRATEGY, 7);
+
+		aclCache = mock(AclCache.class);
+		service = new JdbcPartyHierarchyService(jdbcTemplate, new PartyObjectIdentityRetrievalStrategy());
+		service.setAclCache(aclCache);
+		service.setVersionOverlap(10);
+		service.afterPropertiesSet();
+	}
+
+	@After
+	public void tearDown() {
+		service.destroy();
+		database.shutdown();
+	}
+
+	@Test
+	public void loadedRowsAreNotAppliedAgain() {
+		long generation = service.getGeneration();
+
+		assertEquals(0, service.refreshChanges());
+		assertEquals(generation, service.getGeneration());
+		verifyZeroInteractions(aclCache);
+	}
+
+	@Test
+	public void moveEvictsTheMovedSubtree() {
+		long generation = service.getGeneration();
+		move(DESK_1, FIRM_2, 10);
+
+		assertEquals(1, service.refreshChanges());
+		assertTrue(service.getGeneration() > generation);
+		assertEquals(Arrays.asList(STRATEGY, DESK_1, FIRM_2, CLIENT), service.getAncestors(ACCOUNT));
+		assertTrue(service.isDescendant(FIRM_2, ACCOUNT));
+		assertFalse(service.isDescendant(FIRM_1, ACCOUNT));
+
+		verify(aclCache).evictFromCache(DESK_1);
+		verify(aclCache).evictFromCache(STRATEGY);
+		verify(aclCache).evictFromCache(ACCOUNT);
+		verify(aclCache, never()).evictFromCache(DESK_2);
+		verify(aclCache, never()).evictFromCache(FIRM_1);
+	}
+
+	@Test
+	public void rowsCommittedOutOfVersionOrderAreApplied() {
+		move(ACCOUNT, DESK_2, 20);
+		assertEquals(1, service.refreshChanges());
+		assertTrue(service.isDescendant(DESK_2, ACCOUNT));
+		long generation = service.getGeneration();
+
+		// A lower version becomes visible after a higher one was polled, within the overlap window
+		move(DESK_2, FIRM_2, 15);
+		assertEquals(1, service.refreshChanges());
+		assertTrue(service.getGeneration() > generation);
+		assertTrue(service.isDescendant(FIRM_2, ACCOUNT));
+		assertFalse(service.isDescendant(FIRM_1, DESK_2));
+
+		// Both rows were seen already
+		generation = service.getGeneration();
+		assertEquals(0, service.refreshChanges());
+		assertEquals(generation, service.getGeneration());
+	}
+
+	@Test
+	public void onlyTheLatestRowOfAPartyCounts() {
+		long generation = service.getGeneration();
+		// Both rows are seen by the same poll, the party ends up under its original parent
+		insert(DESK_1, FIRM_2, 10);
+		insert(DESK_1, FIRM_1, 11);
+
+		assertEquals(2, service.refreshChanges());
+		assertEquals(generation, service.getGeneration());
+		assertTrue(service.isDescendant(FIRM_1, ACCOUNT));
+		verifyZeroInteractions(aclCache);
+	}
+
+	@Test
+	public void softDeletedEdgeDetachesTheSubtree() {
+		delete(DESK_1, 10);
+
+		assertEquals(1, service.refreshChanges());
+		assertEquals(Arrays.asList(STRATEGY, DESK_1), service.getAncestors(ACCOUNT));
+		assertFalse(service.isDescendant(CLIENT, DESK_1));
+		assertTrue(service.isDescendant(DESK_1, ACCOUNT));
+		verify(aclCache).evictFromCache(DESK_1);
+		verify(aclCache).evictFromCache(STRATEGY);
+		verify(aclCache).evictFromCache(ACCOUNT);
+		verify(aclCache, never()).evictFromCache(DESK_2);
+
+		// A full reload skips the deleted row the same way
+		service.refresh();
+		assertEquals(Arrays.asList(STRATEGY, DESK_1), service.getAncestors(ACCOUNT));
+		assertFalse(service.isDescendant(FIRM_1, STRATEGY));
+	}
+
+	@Test
+	public void softDeletedLeafLeavesTheHierarchy() {
+		delete(ACCOUNT, 10);
+
+		assertEquals(1, service.refreshChanges());
+		assertEquals(Collections.emptyList(), service.getAncestors(ACCOUNT));
+		assertEquals(Collections.emptyList(), service.getPredecessors(STRATEGY));
+		assertFalse(service.isDescendant(CLIENT, ACCOUNT));
+
+		service.refresh();
+		assertEquals(Collections.emptyList(), service.getPredecessors(STRATEGY));
+	}
+
+	@Test
+	public void softDeletedParentAndChildLeaveTogether() {
+		delete(STRATEGY, 10);
+		delete(ACCOUNT, 11);
+
+		assertEquals(2, service.refreshChanges());
+		assertEquals(Collections.emptyList(), service.getPredecessors(DESK_1));
+		assertEquals(Collections.emptyList(), service.getPredecessors(STRATEGY));
+		assertFalse(service.isDescendant(CLIENT, STRATEGY));
+	}
+
+	private void insert(PartyObjectIdentity party, PartyObjectIdentity parent, long version) {
+		jdbcTemplate.update(INSERT_SQL,
+							party.getPartyType().name(),
+							party.getPartyCode(),
+							null == parent ? null : parent.getPartyType().name(),
+							null == parent ? null : parent.getPartyCode(),
+							version);
+	}
+
+	private void move(PartyObjectIdentity party, PartyObjectIdentity parent, long version) {
+		jdbcTemplate.update(MOVE_SQL,
+							parent.getPartyType().name(),
+							parent.getPartyCode(),
+							version,
+							party.getPartyType().name(),
+							party.getPartyCode());
+	}
+
+	private void delete(PartyObjectIdentity party, long version) {
+		jdbcTemplate.update(DELETE_SQL, version, party.getPartyType().name(), party.getPartyCode());
+	}
+}
@@ -0,0 +1,166 @@
+package com.ashurex.springcustomacl.security;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.model.PartyObjectIdentity;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the nested-set numbering of {@link PartyHierarchyIndex}.
+ *
+ * @author Mustafa Ashurex
+ */
+public class PartyHierarchyIndexTest {
+	private static final PartyObjectIdentity CLIENT = party(MembershipPartyType.CLIENT, "C1");
+	private static final PartyObjectIdentity FIRM_1 = party(MembershipPartyType.FIRM, "F1");
+	private static final PartyObjectIdentity FIRM_2 = party(MembershipPartyType.FIRM, "F2");
+	private static final PartyObjectIdentity DESK_1 = party(MembershipPartyType.DESK, "D1");
+	private static final PartyObjectIdentity DESK_2 = party(MembershipPartyType.DESK, "D2");
+	private static final PartyObjectIdentity DESK_3 = party(MembershipPartyType.DESK, "D3");
+	private static final PartyObjectIdentity STRATEGY = party(MembershipPartyType.STRATEGY, "S1");
+	private static final PartyObjectIdentity ACCOUNT_1 = party(MembershipPartyType.ACCOUNT, "A1");
+	private static final PartyObjectIdentity ACCOUNT_2 = party(MembershipPartyType.ACCOUNT, "A2");
+
+	@Test
+	public void descendantsAcrossLevels() {
+		PartyHierarchyIndex index = tree().build();
+
+		assertEquals(9, index.size());
+		assertTrue(index.isDescendant(CLIENT, ACCOUNT_1));
+		assertTrue(index.isDescendant(FIRM_1, ACCOUNT_2));
+		assertTrue(index.isDescendant(DESK_1, ACCOUNT_1));
+		assertTrue(index.isDescendant(FIRM_2, DESK_3));
+		assertFalse(index.isDescendant(FIRM_2, ACCOUNT_1));
+		assertFalse(index.isDescendant(DESK_2, ACCOUNT_1));
+		assertFalse(index.isDescendant(ACCOUNT_1, CLIENT));
+		assertFalse(index.isDescendant(DESK_1, DESK_1));
+		assertFalse(index.isDescendant(CLIENT, party(MembershipPartyType.ACCOUNT, "unknown")));
+
+		assertEquals(Arrays.asList(STRATEGY, DESK_1, FIRM_1, CLIENT), index.getAncestors(ACCOUNT_1));
+		assertEquals(Collections.emptyList(), index.getAncestors(CLIENT));
+		assertEquals(FIRM_2, index.getParent(DESK_3));
+		assertNull(index.getParent(CLIENT));
+	}
+
+	@Test
+	public void descendantsInPreOrder() {
+		PartyHierarchyIndex index = tree().build();
+
+		List<PartyObjectIdentity> descendants = descendants(index, FIRM_1, Integer.MAX_VALUE);
+		assertEquals(5, descendants.size());
+		assertTrue(descendants.containsAll(Arrays.asList(DESK_1, DESK_2, STRATEGY, ACCOUNT_1, ACCOUNT_2)));
+		// Every party comes before its children
+		assertTrue(descendants.indexOf(DESK_1) < descendants.indexOf(STRATEGY));
+		assertTrue(descendants.indexOf(STRATEGY) < descendants.indexOf(ACCOUNT_1));
+		assertTrue(descendants.indexOf(STRATEGY) < descendants.indexOf(ACCOUNT_2));
+
+		assertEquals(descendants.subList(0, 2), descendants(index, FIRM_1, 2));
+		assertEquals(Collections.emptyList(), descendants(index, FIRM_1, 0));
+		assertEquals(Collections.emptyList(), descendants(index, ACCOUNT_1, Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void filterDescendantsKeepsOrder() {
+		PartyHierarchyIndex index = tree().build();
+
+		List<PartyObjectIdentity> candidates = Arrays.asList(ACCOUNT_2, DESK_3, null, FIRM_1, DESK_1, ACCOUNT_1);
+		assertEquals(Arrays.asList(ACCOUNT_2, DESK_1, ACCOUNT_1), index.filterDescendants(FIRM_1, candidates, c -> c));
+		assertEquals(Collections.emptyList(), index.filterDescendants(ACCOUNT_1, candidates, c -> c));
+	}
+
+	@Test
+	public void cyclesAreNumberedWithoutLooping() {
+		PartyObjectIdentity x = party(MembershipPartyType.DESK, "X");
+		PartyObjectIdentity y = party(MembershipPartyType.DESK, "Y");
+		PartyObjectIdentity z = party(MembershipPartyType.STRATEGY, "Z");
+		PartyHierarchyIndex index = PartyHierarchyIndex.builder()
+													   .put(x, y)
+													   .put(y, x)
+													   .put(z, x)
+													   .put(ACCOUNT_1, CLIENT)
+													   .build();
+
+		assertEquals(5, index.size());
+		assertTrue(index.isDescendant(CLIENT, ACCOUNT_1));
+		assertFalse(index.isDescendant(x, y) && index.isDescendant(y, x));
+		for (PartyObjectIdentity pid : Arrays.asList(x, y, z)) {
+			assertFalse(index.getAncestors(pid).contains(pid));
+			assertFalse(descendants(index, pid, Integer.MAX_VALUE).contains(pid));
+			assertFalse(index.isDescendant(pid, pid));
+			assertFalse(index.isDescendant(pid, CLIENT));
+		}
+	}
+
+	@Test
+	public void removedEdgeDetachesTheSubtree() {
+		PartyHierarchyIndex index = tree().build();
+		PartyHierarchyIndex removed = index.toBuilder().remove(DESK_1).build();
+
+		// Still the parent of its children, so the party stays as a root
+		assertTrue(removed.contains(DESK_1));
+		assertEquals(9, removed.size());
+		assertNull(removed.getParent(DESK_1));
+		assertTrue(removed.isDescendant(DESK_1, ACCOUNT_1));
+		assertFalse(removed.isDescendant(FIRM_1, ACCOUNT_1));
+		assertFalse(removed.isDescendant(CLIENT, STRATEGY));
+		assertEquals(Arrays.asList(STRATEGY, DESK_1), removed.getAncestors(ACCOUNT_1));
+
+		// The source index is unchanged
+		assertTrue(index.isDescendant(FIRM_1, ACCOUNT_1));
+	}
+
+	@Test
+	public void removedEdgeOfLeafDropsTheParty() {
+		PartyHierarchyIndex removed = tree().build().toBuilder().remove(ACCOUNT_1).build();
+
+		assertFalse(removed.contains(ACCOUNT_1));
+		assertEquals(8, removed.size());
+		assertEquals(Collections.singletonList(ACCOUNT_2), descendants(removed, STRATEGY, Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void movedPartyTakesItsSubtree() {
+		PartyHierarchyIndex moved = tree().build().toBuilder().put(DESK_1, FIRM_2).build();
+
+		assertTrue(moved.isDescendant(FIRM_2, ACCOUNT_1));
+		assertFalse(moved.isDescendant(FIRM_1, ACCOUNT_1));
+		assertTrue(moved.isDescendant(FIRM_1, DESK_2));
+		assertEquals(Arrays.asList(STRATEGY, DESK_1, FIRM_2, CLIENT), moved.getAncestors(ACCOUNT_1));
+	}
+
+	/**
+	 * Edges are added children first, the numbering must not depend on the order rows are read in.
+	 */
+	private static PartyHierarchyIndex.Builder tree() {
+		return PartyHierarchyIndex.builder()
+								  .put(ACCOUNT_2, STRATEGY)
+								  .put(ACCOUNT_1, STRATEGY)
+								  .put(STRATEGY, DESK_1)
+								  .put(DESK_3, FIRM_2)
+								  .put(DESK_2, FIRM_1)
+								  .put(DESK_1, FIRM_1)
+								  .put(FIRM_2, CLIENT)
+								  .put(FIRM_1, CLIENT)
+								  .put(CLIENT, null);
+	}
+
+	private static List<PartyObjectIdentity> descendants(PartyHierarchyIndex index,
+														 PartyObjectIdentity pid,
+														 int limit) {
+		List<PartyObjectIdentity> descendants = new ArrayList<>();
+		index.forEachDescendant(pid, limit, descendants::add);
+		return descendants;
+	}
+
+	private static PartyObjectIdentity party(MembershipPartyType type, String code) {
+		return new PartyObjectIdentity(type, code);
+	}
+}
@@ -0,0 +1,161 @@
+package com.ashurex.springcustomacl.security.acls.model;
+
+import java.io.InvalidObjectException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import com.ashurex.springcustomacl.security.acls.domain.CustomPermission;
+import com.ashurex.springcustomacl.security.acls.domain.MembershipPartyType;
+import com.ashurex.springcustomacl.security.acls.domain.PartyMembership;
+import org.junit.Test;
+import org.springframework.security.acls.domain.AccessControlEntryImpl;
+import org.springframework.security.acls.domain.GrantedAuthoritySid;
+import org.springframework.security.acls.domain.PrincipalSid;
+import org.springframework.security.acls.model.AccessControlEntry;
+import org.springframework.security.acls.model.AuditableAccessControlEntry;
+import org.springframework.security.acls.model.Permission;
+import org.springframework.security.acls.model.Sid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trips of {@link PartyMembershipAcl}s through {@link PartyMembershipAclCodec}.
+ *
+ * @author Mustafa Ashurex
+ */
+public class PartyMembershipAclCodecTest {
+	private static final PartyObjectIdentity ACCOUNT = new PartyObjectIdentity(MembershipPartyType.ACCOUNT, "ACC-1");
+	private static final PartyObjectIdentity STRATEGY = new PartyObjectIdentity(MembershipPartyType.STRATEGY, "STR-1");
+	private static final PartyObjectIdentity DESK = new PartyObjectIdentity(MembershipPartyType.DESK, "DSK-1");
+
+	private static final Sid ALICE = new PrincipalSid("alice");
+	private static final Sid BOB = new PrincipalSid("bob");
+	private static final Sid CAROL = new PrincipalSid("carol");
+	private static final Sid ADMINS = new GrantedAuthoritySid("ROLE_ADMIN");
+
+	@Test
+	public void roundTripKeepsEntriesMembershipsAndLoadedSids() throws Exception {
+		PartyMembershipAcl acl = new PartyMembershipAcl("ACCOUNT:ACC-1",
+														ACCOUNT,
+														true,
+														null,
+														null,
+														Arrays.asList(ALICE, BOB, ADMINS));
+
+		// Explicit membership of the ACL's own party
+		PartyMembership explicit = membership(11L, ACCOUNT, 1L, "alice", 100L, false, maskOf(1 | 4));
+		explicit.setParentIdentity(STRATEGY);
+		acl.addAce(new AccessControlEntryImpl(11L, acl, ALICE, explicit, true, true, false));
+
+		// Membership inherited from an ancestor
+		PartyMembership inherited = membership(21L, DESK, 2L, "bob", 50L, true, maskOf(1));
+		acl.addAce(new AccessControlEntryImpl(21L, acl, BOB, inherited, true, false, true));
+
+		// Plain permission without an id
+		acl.addAce(new AccessControlEntryImpl(null, acl, ADMINS, maskOf(8), false, false, false));
+
+		PartyMembershipAcl parent = new PartyMembershipAcl("STRATEGY:STR-1", STRATEGY, false, null, null, null);
+		parent.addAce(new AccessControlEntryImpl(31L, parent, CAROL, maskOf(2), true, false, false));
+		acl.initializeParent(parent);
+
+		PartyMembershipAcl decoded = PartyMembershipAclCodec.decode(PartyMembershipAclCodec.encode(acl));
+
+		assertEquals(ACCOUNT, decoded.getObjectIdentity());
+		assertEquals("ACCOUNT:ACC-1", decoded.getId());
+		assertTrue(decoded.isEntriesInheriting());
+		assertEquals(acl.getLoadedSids(), decoded.getLoadedSids());
+		assertTrue(decoded.isSidLoaded(Arrays.asList(ALICE, BOB)));
+		assertTrue(decoded.isSidLoaded(Collections.singletonList(ADMINS)));
+		assertFalse(decoded.isSidLoaded(Arrays.asList(ALICE, CAROL)));
+
+		List<AccessControlEntry> entries = decoded.getEntries();
+		assertEquals(3, entries.size());
+		assertEntry(acl.getEntries().get(0), entries.get(0));
+		assertEntry(acl.getEntries().get(1), entries.get(1));
+		assertEntry(acl.getEntries().get(2), entries.get(2));
+		assertMembership(explicit, (PartyMembership) entries.get(0).getPermission());
+		assertMembership(inherited, (PartyMembership) entries.get(1).getPermission());
+		assertFalse(entries.get(2).getPermission() instanceof PartyMembership);
+		assertSame(decoded, entries.get(0).getAcl());
+
+		PartyMembershipAcl decodedParent = (PartyMembershipAcl) decoded.getParentAcl();
+		assertEquals(STRATEGY, decodedParent.getObjectIdentity());
+		assertFalse(decodedParent.isEntriesInheriting());
+		assertNull(decodedParent.getLoadedSids());
+		assertTrue(decodedParent.isSidLoaded(Collections.singletonList(CAROL)));
+		assertEquals(1, decodedParent.getEntries().size());
+		assertEntry(parent.getEntries().get(0), decodedParent.getEntries().get(0));
+		assertNull(decodedParent.getParentAcl());
+	}
+
+	@Test
+	public void decodesVersionWithoutMemberships() throws Exception {
+		PartyMembershipAcl acl = new PartyMembershipAcl("ACCOUNT:ACC-1", ACCOUNT, false, null, null, null);
+		acl.addAce(new AccessControlEntryImpl(11L, acl, ALICE, maskOf(1 | 16), true, false, false));
+
+		// Without memberships the layout of both versions is the same
+		byte[] data = PartyMembershipAclCodec.encode(acl);
+		data[0] = 1;
+
+		PartyMembershipAcl decoded = PartyMembershipAclCodec.decode(data);
+		assertEquals(1, decoded.getEntries().size());
+		assertEntry(acl.getEntries().get(0), decoded.getEntries().get(0));
+		assertNull(decoded.getLoadedSids());
+	}
+
+	@Test(expected = InvalidObjectException.class)
+	public void rejectsUnknownVersion() throws Exception {
+		byte[] data = PartyMembershipAclCodec.encode(new PartyMembershipAcl(null, ACCOUNT, false, null, null, null));
+		data[0] = 99;
+		PartyMembershipAclCodec.decode(data);
+	}
+
+	private static Permission maskOf(int mask) {
+		return CustomPermission.valueOf(mask);
+	}
+
+	private static PartyMembership membership(Long id,
+											  PartyObjectIdentity party,
+											  Long userId,
+											  String username,
+											  Long partyId,
+											  boolean inheriting,
+											  Permission permission) {
+		PartyMembership m = new PartyMembership(permission);
+		m.setId(id);
+		m.setPartyType(party.getPartyType());
+		m.setPartyCode(party.getPartyCode());
+		m.setUserId(userId);
+		m.setUsername(username);
+		m.setPartyId(partyId);
+		m.setInheriting(inheriting);
+		return m;
+	}
+
+	private static void assertEntry(AccessControlEntry expected, AccessControlEntry actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getSid(), actual.getSid());
+		assertEquals(expected.getPermission().getMask(), actual.getPermission().getMask());
+		assertEquals(expected.isGranting(), actual.isGranting());
+		assertEquals(((AuditableAccessControlEntry) expected).isAuditSuccess(),
+					 ((AuditableAccessControlEntry) actual).isAuditSuccess());
+		assertEquals(((AuditableAccessControlEntry) expected).isAuditFailure(),
+					 ((AuditableAccessControlEntry) actual).isAuditFailure());
+	}
+
+	private static void assertMembership(PartyMembership expected, PartyMembership actual) {
+		assertEquals(expected.getMask(), actual.getMask());
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getPartyType(), actual.getPartyType());
+		assertEquals(expected.getPartyCode(), actual.getPartyCode());
+		assertEquals(expected.getUserId(), actual.getUserId());
+		assertEquals(expected.getUsername(), actual.getUsername());
+		assertEquals(expected.getPartyId(), actual.getPartyId());
+		assertEquals(expected.isInheriting(), actual.isInheriting());
+		assertEquals(expected.getParentIdentity(), actual.getParentIdentity());
+	}
+}